@@ -1,31 +1,90 @@
 package com.stringintech.phrasewise;
 
+import com.stringintech.phrasewise.batch.BatchRunner;
 import com.stringintech.phrasewise.core.Key;
 import com.stringintech.phrasewise.core.Spelling;
+import com.stringintech.phrasewise.corpus.CorpusLoader;
+import com.stringintech.phrasewise.corpus.IncrementalCorpusIndexer;
+import com.stringintech.phrasewise.exercise.ExerciseGenerator;
+import com.stringintech.phrasewise.exercise.InstrumentRange;
 import com.stringintech.phrasewise.legacy.util.LilyPondHelper;
 import com.stringintech.phrasewise.midi.MidiNote;
 import com.stringintech.phrasewise.midi.MonophonicMidiSequence;
+import com.stringintech.phrasewise.midi.VoiceReduction;
+import com.stringintech.phrasewise.repository.PieceRepository;
+import com.stringintech.phrasewise.repository.SequenceSearchRepository;
+import com.stringintech.phrasewise.similarity.PassageSimilarityIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.Banner;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 
-import javax.sound.midi.MidiSystem;
-import javax.sound.midi.Sequence;
-import javax.sound.midi.Track;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 @SpringBootApplication
 public class PhrasewiseApplication {
+    private static final int MAX_CORPUS_RESULTS = 100;
+    private static final Duration WATCH_RESCAN_INTERVAL = Duration.ofMinutes(10);
+
+    @Value("${phrasewise.output-dir}")
+    private Path outputDir;
+
+    @Value("${phrasewise.manifest-file}")
+    private Path manifestFile;
+
+    // Captured before main can redirect System.out, so batch results still reach the real stdout
+    private static final PrintStream STDOUT = System.out;
+
     public static void main(String[] args) {
-        SpringApplication.run(PhrasewiseApplication.class, args);
+        SpringApplication application = new SpringApplication(PhrasewiseApplication.class);
+        if (args.length == 2 && args[0].equals("batch")) {
+            // NDJSON goes to stdout; the banner, console logs and SQL echo must not interleave with it
+            application.setBannerMode(Banner.Mode.OFF);
+            System.setOut(System.err);
+        }
+        application.run(args);
     }
 
     @Bean
-    public CommandLineRunner commandLineRunner() {
+    public CommandLineRunner commandLineRunner(CorpusLoader corpusLoader,
+                                               PieceRepository pieceRepository,
+                                               SequenceSearchRepository searchRepository,
+                                               BatchRunner batchRunner) {
         return args -> {
+            if ((args.length == 2 || args.length == 3) && args[0].equals("batch")) {
+                int parallelism = Runtime.getRuntime().availableProcessors();
+                BatchRunner.BatchReport report = args.length == 3 ?
+                        batchRunner.run(Path.of(args[1]), Path.of(args[2]), parallelism) :
+                        batchRunner.run(Path.of(args[1]), STDOUT, parallelism);
+                System.err.println("Batch finished: " + report);
+                return;
+            }
+            if (args.length == 2 && args[0].equals("ingest")) {
+                handleIngest(corpusLoader, Path.of(args[1]));
+                return;
+            }
+            if (args.length >= 2 && args[0].equals("watch")) {
+                handleWatch(corpusLoader, Arrays.stream(args, 1, args.length).map(Path::of).toList());
+                return;
+            }
+            if (args.length <= 2 && args.length >= 1 && args[0].equals("dedupe-corpus")) {
+                handleDedupeCorpus(pieceRepository, args.length == 2 ? parseThreshold(args[1]) : 0.8);
+                return;
+            }
+            if (args.length >= 2 && args[0].equals("search-corpus")) {
+                handleSearchCorpus(searchRepository, Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+
             if (args.length < 3) {
                 printUsage();
                 System.exit(1);
@@ -37,18 +96,15 @@ public class PhrasewiseApplication {
             Spelling tonic = Spelling.fromSymbol(keySymbol);
             Key key = new Key(tonic, Key.Mode.MINOR);
 
-            Sequence sequence = MidiSystem.getSequence(Path.of(midiPath).toFile());
-            Track[] tracks = sequence.getTracks();
-            if (tracks.length < 2) {
-                throw new IllegalArgumentException("MIDI file must have at least 2 tracks");
-            }
-            Track mainTrack = tracks[1];
-            MonophonicMidiSequence piece = new MonophonicMidiSequence(mainTrack, sequence.getResolution());
+            // Trimming overlaps leaves monophonic tracks untouched and keeps legato or chordal ones usable
+            MonophonicMidiSequence piece = MonophonicMidiSequence.readMainTrack(Path.of(midiPath),
+                    VoiceReduction.TRIM_OVERLAPS);
 
             try {
                 switch (command) {
                     case "find-sequence" -> handleFindSequence(piece, key, Arrays.copyOfRange(args, 3, args.length));
                     case "find-phrase" -> handleFindPhrase(piece, key, Arrays.copyOfRange(args, 3, args.length));
+                    case "generate-exercises" -> handleGenerateExercises(piece, key, Arrays.copyOfRange(args, 3, args.length));
                     default -> {
                         System.err.println("Unknown command: " + command);
                         printUsage();
@@ -62,6 +118,88 @@ public class PhrasewiseApplication {
         };
     }
 
+    private void handleIngest(CorpusLoader corpusLoader, Path corpusDir) throws IOException {
+        if (!Files.isDirectory(corpusDir)) {
+            System.err.println("Error: Not a directory: " + corpusDir);
+            System.exit(1);
+        }
+        System.out.println("Ingested " + corpusLoader.load(corpusDir));
+        System.out.println("Reloaded " + corpusLoader.reload());
+    }
+
+    private void handleWatch(CorpusLoader corpusLoader, List<Path> corpusDirs) throws IOException {
+        for (Path corpusDir : corpusDirs) {
+            if (!Files.isDirectory(corpusDir)) {
+                System.err.println("Error: Not a directory: " + corpusDir);
+                System.exit(1);
+            }
+        }
+        IncrementalCorpusIndexer indexer = new IncrementalCorpusIndexer(corpusDirs, manifestFile, corpusLoader);
+        System.out.println("Watching " + indexer.snapshot().size() + " indexed pieces");
+        try {
+            indexer.watch(WATCH_RESCAN_INTERVAL, report -> {
+                if (report.hasChanges()) {
+                    System.out.println("Updated " + report + "; " + indexer.snapshot().size() + " pieces");
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleSearchCorpus(SequenceSearchRepository searchRepository, String[] args) {
+        boolean transposed = args[0].equals("--transposed");
+        List<String> noteArgs = Arrays.asList(args).subList(transposed ? 1 : 0, args.length);
+        if (noteArgs.isEmpty()) {
+            System.err.println("Error: No notes provided for sequence search");
+            printUsage();
+            return;
+        }
+
+        List<Spelling> searchSpellings = Spelling.listFromSymbols(noteArgs);
+        var matches = transposed ?
+                searchRepository.findTransposedSequence(searchSpellings, MAX_CORPUS_RESULTS) :
+                searchRepository.findSequence(searchSpellings, MAX_CORPUS_RESULTS);
+
+        if (matches.isEmpty()) {
+            System.out.println("No matching sequence found");
+        }
+        for (var match : matches) {
+            System.out.println(match.piecePath() + " track " + match.trackIndex() +
+                    " tick " + match.match().startTick());
+        }
+    }
+
+    private double parseThreshold(String argument) {
+        try {
+            double threshold = Double.parseDouble(argument);
+            if (threshold >= 0 && threshold <= 1) {
+                return threshold;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below like an out-of-range value
+        }
+        System.err.println("Error: Similarity threshold must be a number between 0 and 1: " + argument);
+        printUsage();
+        System.exit(1);
+        return 0;
+    }
+
+    private void handleDedupeCorpus(PieceRepository pieceRepository, double threshold) {
+        PassageSimilarityIndex<String> index = new PassageSimilarityIndex<>();
+        pieceRepository.forEachTrack((track, sequence) ->
+                index.add(track.getPiece().getPath() + "#" + track.getTrackIndex(), sequence.getNotes()));
+
+        List<List<String>> groups = index.findDuplicateGroups(threshold);
+        if (groups.isEmpty()) {
+            System.out.println("No duplicate tracks found");
+        }
+        for (List<String> group : groups) {
+            System.out.println("Keep " + group.getFirst());
+            group.subList(1, group.size()).forEach(duplicate -> System.out.println("  duplicate " + duplicate));
+        }
+    }
+
     private void handleFindSequence(MonophonicMidiSequence piece, Key key, String[] noteArgs) {
         if (noteArgs.length < 1) {
             System.err.println("Error: No notes provided for sequence search");
@@ -80,17 +218,59 @@ public class PhrasewiseApplication {
     }
 
     private void handleFindPhrase(MonophonicMidiSequence piece, Key key, String[] noteArgs) {
+        List<MidiNote> phrase = findPhrase(piece, noteArgs);
+
+        if (phrase == null) {
+            return;
+        }
+        if (phrase.isEmpty()) {
+            System.out.println("No matching phrase found");
+        } else {
+            generateScore(phrase, piece.getResolution(), key);
+        }
+    }
+
+    private void handleGenerateExercises(MonophonicMidiSequence piece, Key key, String[] noteArgs) {
+        List<List<MidiNote>> phrases = new ArrayList<>();
+        int phraseStart = 0;
+        for (int i = 0; i <= noteArgs.length; i++) {
+            if (i == noteArgs.length || noteArgs[i].equals("+")) {
+                List<MidiNote> phrase = findPhrase(piece, Arrays.copyOfRange(noteArgs, phraseStart, i));
+                if (phrase == null) {
+                    return;
+                }
+                if (phrase.isEmpty()) {
+                    System.out.println("No matching phrase found for: " + String.join(" ", Arrays.copyOfRange(noteArgs, phraseStart, i)));
+                    return;
+                }
+                phrases.add(phrase);
+                phraseStart = i + 1;
+            }
+        }
+
+        List<ExerciseGenerator.Exercise> exercises = new ExerciseGenerator(InstrumentRange.CELLO).generate(phrases, key);
+        generateScoreBook(exercises.stream()
+                .map(exercise -> new LilyPondHelper.ScoreVariant(exercise.title(), exercise.notes(), exercise.key()))
+                .toList(), piece.getResolution());
+        System.out.println("Generated " + exercises.size() + " exercises from " + phrases.size() + " phrase(s)");
+    }
+
+    /**
+     * Parses "start notes -- end notes" and finds the phrase between them. Returns null (after
+     * reporting the problem) if the arguments are malformed.
+     */
+    private List<MidiNote> findPhrase(MonophonicMidiSequence piece, String[] noteArgs) {
         if (noteArgs.length < 2) {
             System.err.println("Error: Both start and end sequences must be provided");
             printUsage();
-            return;
+            return null;
         }
 
         int separatorIndex = indexOf(noteArgs, "--");
         if (separatorIndex == -1) {
             System.err.println("Error: Missing separator '--' between start and end sequences");
             printUsage();
-            return;
+            return null;
         }
 
         List<String> startSeqArgs = Arrays.asList(Arrays.copyOfRange(noteArgs, 0, separatorIndex));
@@ -99,24 +279,18 @@ public class PhrasewiseApplication {
         if (startSeqArgs.isEmpty() || endSeqArgs.isEmpty()) {
             System.err.println("Error: Both start and end sequences must be provided");
             printUsage();
-            return;
+            return null;
         }
 
         List<Spelling> startSpellings = Spelling.listFromSymbols(startSeqArgs);
         List<Spelling> endSpellings = Spelling.listFromSymbols(endSeqArgs);
 
-        List<MidiNote> phrase = piece.findPhraseBetweenSequences(startSpellings, endSpellings);
-
-        if (phrase.isEmpty()) {
-            System.out.println("No matching phrase found");
-        } else {
-            generateScore(phrase, piece.getResolution(), key);
-        }
+        return piece.findPhraseBetweenSequences(startSpellings, endSpellings);
     }
 
     private void generateScore(List<MidiNote> notes, int resolution, Key key) {
         try {
-            var dir = Path.of("/Users/kowsar/Downloads"); //TODO why middle man
+            var dir = outputDir; //TODO why middle man
             var lilyFile = dir.resolve("bach-phrase"); //TODO
             LilyPondHelper.createColoredScore(notes, resolution, key, lilyFile); //TODO
             LilyPondHelper.compileToPDF(lilyFile, dir);
@@ -125,6 +299,16 @@ public class PhrasewiseApplication {
         }
     }
 
+    private void generateScoreBook(List<LilyPondHelper.ScoreVariant> variants, int resolution) {
+        try {
+            var lilyFile = outputDir.resolve("bach-exercises");
+            LilyPondHelper.createColoredScoreBook(variants, resolution, lilyFile);
+            LilyPondHelper.compileToPDF(lilyFile, outputDir);
+        } catch (Exception e) {
+            System.err.println("Error generating scores: " + e.getMessage());
+        }
+    }
+
     private int indexOf(String[] array, String target) {
         for (int i = 0; i < array.length; i++) {
             if (array[i].equals(target)) {
@@ -138,9 +322,21 @@ public class PhrasewiseApplication {
         System.err.println("Usage:");
         System.err.println("  find-sequence <midi-file-path> <key> <note1> <note2> ...");
         System.err.println("  find-phrase <midi-file-path> <key> <start-note1> <start-note2> ... -- <end-note1> <end-note2> ...");
+        System.err.println("  generate-exercises <midi-file-path> <key> <start-notes> -- <end-notes> [+ <start-notes> -- <end-notes> ...]");
+        System.err.println("  batch <query-file> [output-dir]");
+        System.err.println("  ingest <corpus-dir>");
+        System.err.println("  watch <corpus-dir> [<corpus-dir> ...]");
+        System.err.println("  search-corpus [--transposed] <note1> <note2> ...");
+        System.err.println("  dedupe-corpus [similarity-threshold]");
         System.err.println();
         System.err.println("Examples:");
         System.err.println("  find-sequence path/to/midi.mid C C D E F");
         System.err.println("  find-phrase path/to/midi.mid Bb C D E -- G F E");
+        System.err.println("  generate-exercises path/to/midi.mid D D F A -- C# D + A D E -- F E D");
+        System.err.println("  batch path/to/queries.jsonl path/to/results");
+        System.err.println("  ingest path/to/corpus");
+        System.err.println("  watch path/to/corpus");
+        System.err.println("  search-corpus --transposed D F A");
+        System.err.println("  dedupe-corpus 0.8");
     }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.stringintech.phrasewise.batch;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * One line of a batch query file, e.g.
+ * {@code {"file": "suite2.mid", "key": "D", "command": "find-phrase", "notes": ["D", "F", "--", "A", "D"]}}.
+ * {@code mode} is optional and defaults to minor, like the command line.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BatchQuery(String file, String key, String mode, String command, List<String> notes) {
+}
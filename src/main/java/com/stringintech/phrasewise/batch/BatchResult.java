@@ -0,0 +1,27 @@
+package com.stringintech.phrasewise.batch;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * One NDJSON output line. {@code line} is the 1-based line of the query it answers; results are
+ * written in completion order, not query order.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchResult(long line, String file, String command, String status, String error,
+                          List<Match> matches) {
+    public record Match(long startTick, long endTick, List<Note> notes) {
+    }
+
+    public record Note(String name, int pitch, long startTick, long duration) {
+    }
+
+    static BatchResult ok(long line, BatchQuery query, List<Match> matches) {
+        return new BatchResult(line, query.file(), query.command(), "ok", null, matches);
+    }
+
+    static BatchResult error(long line, String file, String command, String error) {
+        return new BatchResult(line, file, command, "error", error, null);
+    }
+}
@@ -0,0 +1,341 @@
+package com.stringintech.phrasewise.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stringintech.phrasewise.core.Key;
+import com.stringintech.phrasewise.core.Spelling;
+import com.stringintech.phrasewise.midi.MidiNote;
+import com.stringintech.phrasewise.midi.MonophonicMidiSequence;
+import com.stringintech.phrasewise.midi.VoiceReduction;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a file of JSON-lines queries (see {@link BatchQuery}) and streams {@link BatchResult}s as
+ * NDJSON.
+ * <p>
+ * A first pass groups queries by MIDI file, keeping only each query's byte offset in the query file.
+ * Each file is then parsed once on a work-stealing pool, and its queries are split into subtasks that
+ * idle workers can steal, so one heavily queried piece does not serialize the batch. At most twice
+ * the parallelism of pieces are held parsed at a time and results go through a bounded queue to a
+ * single writer, so memory stays flat however large the batch is.
+ */
+@Component
+public class BatchRunner {
+    private static final int OUTPUT_QUEUE_CAPACITY = 1024;
+    private static final int QUERIES_PER_TASK = 32;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public record BatchReport(long queries, int pieces, long errors, long elapsedNanos) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d queries on %d pieces (%d errors) in %.1f ms",
+                    queries, pieces, errors, elapsedNanos / 1e6);
+        }
+    }
+
+    /**
+     * Offsets of the queries against one piece, in compact parallel arrays.
+     */
+    private static class QueryRefs {
+        long[] offsets = new long[4];
+        int[] lengths = new int[4];
+        long[] lines = new long[4];
+        int size;
+
+        void add(long offset, int length, long line) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            offsets[size] = offset;
+            lengths[size] = length;
+            lines[size] = line;
+            size++;
+        }
+    }
+
+    private class Run {
+        final Path queryFile;
+        final FileChannel channel;
+        final NdjsonWriter output;
+        final AtomicLong queries = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+
+        Run(Path queryFile, FileChannel channel, NdjsonWriter output) {
+            this.queryFile = queryFile;
+            this.channel = channel;
+            this.output = output;
+        }
+
+        void emit(BatchResult result) {
+            queries.incrementAndGet();
+            if (result.error() != null) {
+                errors.incrementAndGet();
+            }
+            try {
+                output.write(objectMapper.writeValueAsString(result));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot serialize result", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while writing results", e);
+            }
+        }
+
+        BatchQuery readQuery(QueryRefs refs, int i) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(refs.lengths[i]);
+            long position = refs.offsets[i];
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Query file changed during batch");
+                }
+            }
+            return objectMapper.readValue(buffer.array(), BatchQuery.class);
+        }
+    }
+
+    private class PieceTask extends RecursiveAction {
+        private final Run run;
+        private final String file;
+        private final QueryRefs refs;
+
+        PieceTask(Run run, String file, QueryRefs refs) {
+            this.run = run;
+            this.file = file;
+            this.refs = refs;
+        }
+
+        @Override
+        protected void compute() {
+            MonophonicMidiSequence piece;
+            try {
+                piece = MonophonicMidiSequence.readMainTrack(Path.of(file), VoiceReduction.TRIM_OVERLAPS);
+            } catch (Exception e) {
+                for (int i = 0; i < refs.size; i++) {
+                    run.emit(BatchResult.error(refs.lines[i], file, null, "Cannot read piece: " + e.getMessage()));
+                }
+                return;
+            }
+            new QueryRangeTask(run, piece, refs, 0, refs.size).invoke();
+        }
+    }
+
+    private class QueryRangeTask extends RecursiveAction {
+        private final Run run;
+        private final MonophonicMidiSequence piece;
+        private final QueryRefs refs;
+        private final int from;
+        private final int to;
+
+        QueryRangeTask(Run run, MonophonicMidiSequence piece, QueryRefs refs, int from, int to) {
+            this.run = run;
+            this.piece = piece;
+            this.refs = refs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > QUERIES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new QueryRangeTask(run, piece, refs, from, middle),
+                        new QueryRangeTask(run, piece, refs, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                BatchQuery query;
+                try {
+                    query = run.readQuery(refs, i);
+                } catch (IOException e) {
+                    run.emit(BatchResult.error(refs.lines[i], null, null, "Cannot read query: " + e.getMessage()));
+                    continue;
+                }
+                try {
+                    run.emit(BatchResult.ok(refs.lines[i], query, execute(query, piece)));
+                } catch (IllegalArgumentException e) {
+                    run.emit(BatchResult.error(refs.lines[i], query.file(), query.command(), e.getMessage()));
+                } catch (RuntimeException e) {
+                    // Any failure stays with its query; the rest of the range still gets answered
+                    run.emit(BatchResult.error(refs.lines[i], query.file(), query.command(),
+                            "Query failed: " + e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs all queries, writing results to {@code <query-file-name>.ndjson} in {@code outputDir}.
+     * Relative MIDI paths are resolved against the query file's directory.
+     */
+    public BatchReport run(Path queryFile, Path outputDir, int parallelism) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        String name = queryFile.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        return run(queryFile, Files.newBufferedWriter(outputDir.resolve(name + ".ndjson")), true, parallelism);
+    }
+
+    /**
+     * Runs all queries, writing results to the given stream, which is flushed but left open. Nothing
+     * else may write to the stream meanwhile, or consumers see lines that are not NDJSON.
+     */
+    public BatchReport run(Path queryFile, OutputStream out, int parallelism) throws IOException, InterruptedException {
+        return run(queryFile, new OutputStreamWriter(out, StandardCharsets.UTF_8), false, parallelism);
+    }
+
+    private BatchReport run(Path queryFile, Writer out, boolean closeOut, int parallelism)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        int pieces;
+        Run run;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(queryFile, StandardOpenOption.READ);
+             NdjsonWriter output = new NdjsonWriter(out, closeOut, OUTPUT_QUEUE_CAPACITY)) {
+            run = new Run(queryFile, channel, output);
+            Map<String, QueryRefs> queriesByPiece = indexQueries(run);
+            pieces = queriesByPiece.size();
+
+            Semaphore parsedPieces = new Semaphore(parallelism * 2);
+            CountDownLatch done = new CountDownLatch(pieces);
+            Iterator<Map.Entry<String, QueryRefs>> entries = queriesByPiece.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, QueryRefs> entry = entries.next();
+                entries.remove();
+                parsedPieces.acquire();
+                PieceTask task = new PieceTask(run, entry.getKey(), entry.getValue());
+                pool.execute(() -> {
+                    try {
+                        task.invoke();
+                    } finally {
+                        parsedPieces.release();
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            pool.shutdown();
+        }
+        return new BatchReport(run.queries.get(), pieces, run.errors.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the query file once, grouping query offsets by resolved MIDI path. Malformed lines are
+     * reported right away.
+     */
+    private Map<String, QueryRefs> indexQueries(Run run) throws IOException {
+        Map<String, QueryRefs> queriesByPiece = new LinkedHashMap<>();
+        Path baseDir = run.queryFile.toAbsolutePath().getParent();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(run.queryFile))) {
+            long offset = 0;
+            long lineStart = 0;
+            long lineNumber = 1;
+            int b;
+            do {
+                b = in.read();
+                if (b == '\n' || b == -1) {
+                    byte[] bytes = line.toByteArray();
+                    int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                    if (!new String(bytes, 0, length, StandardCharsets.UTF_8).isBlank()) {
+                        try {
+                            BatchQuery query = objectMapper.readValue(bytes, 0, length, BatchQuery.class);
+                            if (query.file() == null) {
+                                throw new IllegalArgumentException("Missing 'file'");
+                            }
+                            String piece = baseDir.resolve(query.file()).normalize().toString();
+                            queriesByPiece.computeIfAbsent(piece, p -> new QueryRefs()).add(lineStart, length, lineNumber);
+                        } catch (JsonProcessingException | IllegalArgumentException e) {
+                            run.emit(BatchResult.error(lineNumber, null, null, "Malformed query: " + e.getMessage()));
+                        }
+                    }
+                    line.reset();
+                    lineNumber++;
+                    lineStart = offset + 1;
+                } else {
+                    line.write(b);
+                }
+                offset++;
+            } while (b != -1);
+        }
+        return queriesByPiece;
+    }
+
+    private static List<BatchResult.Match> execute(BatchQuery query, MonophonicMidiSequence piece) {
+        if (query.key() == null || query.command() == null || query.notes() == null) {
+            throw new IllegalArgumentException("Query must have 'key', 'command' and 'notes'");
+        }
+        Key.Mode mode = query.mode() == null ? Key.Mode.MINOR : Key.Mode.valueOf(query.mode().toUpperCase(Locale.ROOT));
+        Key key = new Key(Spelling.fromSymbol(query.key()), mode);
+
+        return switch (query.command()) {
+            case "find-sequence" -> findAllSequences(piece, Spelling.listFromSymbols(query.notes()), key);
+            case "find-phrase" -> findPhrase(piece, query.notes(), key);
+            default -> throw new IllegalArgumentException("Unknown command: " + query.command());
+        };
+    }
+
+    private static List<BatchResult.Match> findAllSequences(MonophonicMidiSequence piece, List<Spelling> spellings, Key key) {
+        if (spellings.isEmpty()) {
+            throw new IllegalArgumentException("No notes provided for sequence search");
+        }
+        List<BatchResult.Match> matches = new ArrayList<>();
+        MonophonicMidiSequence.NoteSequenceMatch match = piece.findNoteSequence(spellings, 0);
+        while (match != null) {
+            matches.add(toMatch(match.sequence(), key));
+            match = piece.findNoteSequence(spellings, match.startTick() + 1);
+        }
+        return matches;
+    }
+
+    private static List<BatchResult.Match> findPhrase(MonophonicMidiSequence piece, List<String> notes, Key key) {
+        int separatorIndex = notes.indexOf("--");
+        if (separatorIndex <= 0 || separatorIndex == notes.size() - 1) {
+            throw new IllegalArgumentException("Both start and end sequences must be provided, separated by '--'");
+        }
+        List<MidiNote> phrase = piece.findPhraseBetweenSequences(
+                Spelling.listFromSymbols(notes.subList(0, separatorIndex)),
+                Spelling.listFromSymbols(notes.subList(separatorIndex + 1, notes.size())));
+        return phrase.isEmpty() ? List.of() : List.of(toMatch(phrase, key));
+    }
+
+    private static BatchResult.Match toMatch(List<MidiNote> notes, Key key) {
+        List<BatchResult.Note> resultNotes = notes.stream()
+                .map(note -> {
+                    var pitch = key.newPitch(note.pitch());
+                    return new BatchResult.Note(pitch.getSpelling().getSymbol() + pitch.getOctave(),
+                            note.pitch(), note.startTick(), note.duration());
+                })
+                .toList();
+        MidiNote last = notes.getLast();
+        return new BatchResult.Match(notes.getFirst().startTick(), last.startTick() + last.duration(), resultNotes);
+    }
+}
@@ -0,0 +1,73 @@
+package com.stringintech.phrasewise.batch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes lines from a bounded queue on a dedicated thread. Producers block in {@link #write} while
+ * the queue is full, so a slow sink throttles the workers instead of buffering results in memory.
+ */
+class NdjsonWriter implements AutoCloseable {
+    // Compared by identity, so no result line can be mistaken for it
+    private static final String END = new String("end");
+
+    private final BlockingQueue<String> queue;
+    private final Writer out;
+    private final boolean closeOut;
+    private final Thread thread;
+    private volatile IOException failure;
+
+    NdjsonWriter(Writer out, boolean closeOut, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.out = out;
+        this.closeOut = closeOut;
+        this.thread = new Thread(this::drain, "ndjson-writer");
+        this.thread.start();
+    }
+
+    void write(String line) throws InterruptedException {
+        if (failure != null) {
+            throw new IllegalStateException("Output failed", failure);
+        }
+        queue.put(line);
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        queue.put(END);
+        thread.join();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void drain() {
+        try {
+            String line;
+            while ((line = queue.take()) != END) {
+                if (failure != null) {
+                    // Keep taking so producers blocked on a full queue can finish
+                    continue;
+                }
+                try {
+                    out.write(line);
+                    out.write('\n');
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure == null) {
+                out.flush();
+                if (closeOut) {
+                    out.close();
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -33,7 +33,7 @@ public class HibernateConfig {
     @Value("${hibernate.dialect}")
     private String dialect;
 
-    @Value("${hibernate.show_sql:true}")
+    @Value("${hibernate.show_sql:false}")
     private String showSql;
 
     @Value("${hibernate.format_sql:true}")
@@ -45,6 +45,9 @@ public class HibernateConfig {
     @Value("${hibernate.connection.pool_size:10}")
     private String poolSize;
 
+    @Value("${hibernate.jdbc.batch_size:50}")
+    private String batchSize;
+
     @Value("${hibernate.packages_to_scan}")
     private String packagesToScan;
 
@@ -83,9 +86,24 @@ public class HibernateConfig {
         properties.setProperty("hibernate.format_sql", formatSql);
         properties.setProperty("hibernate.hbm2ddl.auto", hbm2ddlAuto);
 
+        properties.putAll(bulkWriteProperties(batchSize));
+
         // Optional: Connection pool settings
         properties.setProperty("hibernate.connection.pool_size", poolSize);
 
         return properties;
     }
+
+    /**
+     * Bulk writes: group inserts/updates per table so the driver can send them as JDBC batches.
+     * Public so that session factories built outside Spring batch the same way.
+     */
+    public static Properties bulkWriteProperties(String batchSize) {
+        Properties properties = new Properties();
+        properties.setProperty("hibernate.jdbc.batch_size", batchSize);
+        properties.setProperty("hibernate.order_inserts", "true");
+        properties.setProperty("hibernate.order_updates", "true");
+        properties.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+        return properties;
+    }
 }
\ No newline at end of file
@@ -24,6 +24,46 @@ public class Key {
         return new Pitch(spelling, octave);
     }
 
+    /**
+     * The key a given number of semitones away, with its tonic spelled as in the usual key
+     * signatures (e.g. Eb rather than D# major, but G# rather than Ab minor).
+     */
+    public Key transpose(int semitones) {
+        int tonicPitch = Math.floorMod(tonic.getBasePitch() + semitones, 12);
+        Spelling[] tonics = mode == Mode.MINOR ? MINOR_TONICS : MAJOR_TONICS;
+        return new Key(tonics[tonicPitch], mode);
+    }
+
+    private static final Spelling[] MAJOR_TONICS = {
+            Spelling.natural(NoteName.C),
+            Spelling.flat(NoteName.D),
+            Spelling.natural(NoteName.D),
+            Spelling.flat(NoteName.E),
+            Spelling.natural(NoteName.E),
+            Spelling.natural(NoteName.F),
+            Spelling.sharp(NoteName.F),
+            Spelling.natural(NoteName.G),
+            Spelling.flat(NoteName.A),
+            Spelling.natural(NoteName.A),
+            Spelling.flat(NoteName.B),
+            Spelling.natural(NoteName.B)
+    };
+
+    private static final Spelling[] MINOR_TONICS = {
+            Spelling.natural(NoteName.C),
+            Spelling.sharp(NoteName.C),
+            Spelling.natural(NoteName.D),
+            Spelling.flat(NoteName.E),
+            Spelling.natural(NoteName.E),
+            Spelling.natural(NoteName.F),
+            Spelling.sharp(NoteName.F),
+            Spelling.natural(NoteName.G),
+            Spelling.sharp(NoteName.G),
+            Spelling.natural(NoteName.A),
+            Spelling.flat(NoteName.B),
+            Spelling.natural(NoteName.B)
+    };
+
     private static final Spelling[] MAJOR_SHARP_KEYS = {
             Spelling.natural(NoteName.C),
             Spelling.natural(NoteName.G),
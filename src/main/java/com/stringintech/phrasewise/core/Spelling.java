@@ -56,6 +56,14 @@ public record Spelling(NoteName name, Accidental accidental) {
                 .collect(Collectors.toList());
     }
 
+    public String getSymbol() {
+        return name() + switch (accidental()) {
+            case SHARP -> "#";
+            case FLAT -> "b";
+            case NATURAL -> "";
+        };
+    }
+
     public static Spelling natural(NoteName note) {
         return new Spelling(note, Accidental.NATURAL);
     }
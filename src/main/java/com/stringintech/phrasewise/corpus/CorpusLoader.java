@@ -0,0 +1,296 @@
+package com.stringintech.phrasewise.corpus;
+
+import com.stringintech.phrasewise.midi.MonophonicMidiSequence;
+import com.stringintech.phrasewise.midi.VoiceReduction;
+import com.stringintech.phrasewise.model.Piece;
+import com.stringintech.phrasewise.model.PieceTrack;
+import com.stringintech.phrasewise.model.SearchIndex;
+import com.stringintech.phrasewise.repository.PieceRepository;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bulk-loads a directory tree of MIDI files. Files are walked lazily and handled {@code batchSize}
+ * at a time: one query fetches the stored pieces of the whole batch, and the session is flushed
+ * and cleared once per batch, so neither the corpus nor the persisted entities pile up in memory
+ * and the inserts go out as JDBC batches. Files whose content hash is already stored under the same
+ * path are skipped.
+ */
+@Component
+public class CorpusLoader {
+    private final SessionFactory sessionFactory;
+    private final PieceRepository pieceRepository;
+    private final int batchSize;
+
+    public record LoadReport(int pieces, int skipped, int failed, int tracks, long notes, long elapsedNanos) {
+        public double piecesPerSecond() {
+            return elapsedNanos == 0 ? 0 : pieces * 1e9 / elapsedNanos;
+        }
+
+        public double notesPerSecond() {
+            return elapsedNanos == 0 ? 0 : notes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d pieces (%d unchanged, %d failed), %d tracks, %d notes in %.1f ms (%.1f pieces/s, %.0f notes/s)",
+                    pieces, skipped, failed, tracks, notes, elapsedNanos / 1e6, piecesPerSecond(), notesPerSecond());
+        }
+    }
+
+    /**
+     * A MIDI file reduced to its non-empty tracks, keyed by track index.
+     */
+    public record ParsedPiece(String path, String contentHash, int resolution,
+                              Map<Integer, MonophonicMidiSequence> tracks) {
+    }
+
+    private static class Counters {
+        int pieces;
+        int skipped;
+        int failed;
+        int tracks;
+        long notes;
+
+        LoadReport toReport(long startNanos) {
+            return new LoadReport(pieces, skipped, failed, tracks, notes, System.nanoTime() - startNanos);
+        }
+    }
+
+    public CorpusLoader(SessionFactory sessionFactory, PieceRepository pieceRepository,
+                        @Value("${hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.sessionFactory = sessionFactory;
+        this.pieceRepository = pieceRepository;
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public LoadReport load(Path root) throws IOException {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+
+        try (Stream<Path> files = Files.walk(root);
+             Session session = sessionFactory.openSession()) {
+            Iterator<Path> midiFiles = files.filter(Files::isRegularFile).filter(CorpusLoader::isMidiFile).iterator();
+            List<Path> batch = new ArrayList<>(batchSize);
+            while (midiFiles.hasNext()) {
+                batch.add(midiFiles.next());
+                if (batch.size() == batchSize || !midiFiles.hasNext()) {
+                    Transaction transaction = session.beginTransaction();
+                    try {
+                        ingest(session, batch, counters);
+                        transaction.commit();
+                    } catch (RuntimeException e) {
+                        transaction.rollback();
+                        throw e;
+                    }
+                    session.clear();
+                    batch.clear();
+                }
+            }
+        }
+        return counters.toReport(start);
+    }
+
+    /**
+     * Reads every stored track back into memory-independent sequences, measuring the reload time.
+     */
+    public LoadReport reload() {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        long[] lastPieceId = {-1};
+        pieceRepository.forEachTrack((track, sequence) -> {
+            if (track.getPiece().getId() != lastPieceId[0]) {
+                lastPieceId[0] = track.getPiece().getId();
+                counters.pieces++;
+            }
+            counters.tracks++;
+            counters.notes += sequence.getNotes().size();
+        });
+        return counters.toReport(start);
+    }
+
+    /**
+     * Applies one batch of changes in a single transaction, so readers of the database see either
+     * none or all of them. Pieces already stored under the same path are replaced.
+     */
+    public LoadReport apply(Collection<ParsedPiece> upserts, Collection<String> removedPaths) {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                List<String> removed = List.copyOf(removedPaths);
+                for (int from = 0; from < removed.size(); from += batchSize) {
+                    findPieces(session, removed.subList(from, Math.min(from + batchSize, removed.size())))
+                            .values().forEach(session::remove);
+                }
+                List<ParsedPiece> pieces = List.copyOf(upserts);
+                for (int from = 0; from < pieces.size(); from += batchSize) {
+                    List<ParsedPiece> batch = pieces.subList(from, Math.min(from + batchSize, pieces.size()));
+                    List<String> paths = batch.stream().map(ParsedPiece::path).toList();
+                    store(session, batch, findPieces(session, paths), counters);
+                    session.clear();
+                }
+                transaction.commit();
+            } catch (RuntimeException e) {
+                // The caller may retry the same delta, so nothing of this attempt may stay behind
+                transaction.rollback();
+                throw e;
+            }
+        }
+        return counters.toReport(start);
+    }
+
+    /**
+     * Streams the stored tracks with their decoded notes. Nothing is retained once the consumer
+     * returns, so the whole corpus is never held in memory at once.
+     */
+    public long forEachStoredTrack(BiConsumer<PieceTrack, MonophonicMidiSequence> consumer) {
+        return pieceRepository.forEachTrack(consumer);
+    }
+
+    public static ParsedPiece parse(String path, String contentHash, byte[] content)
+            throws InvalidMidiDataException, IOException {
+        Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(content));
+        List<MonophonicMidiSequence> sequences = MonophonicMidiSequence.fromTracks(sequence, VoiceReduction.TRIM_OVERLAPS);
+        Map<Integer, MonophonicMidiSequence> tracks = new TreeMap<>();
+        for (int i = 0; i < sequences.size(); i++) {
+            if (!sequences.get(i).getNotes().isEmpty()) {
+                tracks.put(i, sequences.get(i));
+            }
+        }
+        return new ParsedPiece(path, contentHash, sequence.getResolution(), tracks);
+    }
+
+    public static String pathKey(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    public static boolean isMidiFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".mid") || name.endsWith(".midi");
+    }
+
+    public static String contentHash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Persists a batch of files, replacing outdated copies. The stored pieces of the whole batch are
+     * looked up at once: a query per file would flush the pending inserts every time. A file that
+     * cannot be read or parsed is counted as failed and does not hold up the rest of the corpus.
+     */
+    private void ingest(Session session, List<Path> files, Counters counters) {
+        Map<String, Path> filesByPath = new LinkedHashMap<>();
+        for (Path file : files) {
+            filesByPath.put(pathKey(file), file);
+        }
+        Map<String, Piece> stored = findPieces(session, filesByPath.keySet());
+
+        List<ParsedPiece> changed = new ArrayList<>();
+        for (Map.Entry<String, Path> entry : filesByPath.entrySet()) {
+            byte[] content;
+            try {
+                content = Files.readAllBytes(entry.getValue());
+            } catch (NoSuchFileException e) {
+                // Deleted since the walk listed it
+                continue;
+            } catch (IOException e) {
+                System.err.println("Skipping " + entry.getValue() + ": " + e);
+                counters.failed++;
+                continue;
+            }
+            String hash = contentHash(content);
+            Piece existing = stored.get(entry.getKey());
+            if (existing != null && existing.getContentHash().equals(hash)) {
+                counters.skipped++;
+                continue;
+            }
+            try {
+                changed.add(parse(entry.getKey(), hash, content));
+            } catch (InvalidMidiDataException | IOException e) {
+                // A truncated file surfaces as an EOFException rather than as invalid MIDI data
+                System.err.println("Skipping " + entry.getValue() + ": " + e);
+                counters.failed++;
+            }
+        }
+        store(session, changed, stored, counters);
+    }
+
+    private void store(Session session, List<ParsedPiece> batch, Map<String, Piece> stored, Counters counters) {
+        boolean replacing = false;
+        for (ParsedPiece parsed : batch) {
+            Piece existing = stored.get(parsed.path());
+            if (existing != null) {
+                session.remove(existing);
+                replacing = true;
+            }
+        }
+        if (replacing) {
+            // Inserts run before deletes within a flush; free the unique paths first
+            session.flush();
+        }
+
+        for (ParsedPiece parsed : batch) {
+            Piece piece = new Piece(parsed.path(), parsed.contentHash(), parsed.resolution());
+            List<SearchIndex> searchIndexes = new ArrayList<>();
+            parsed.tracks().forEach((index, sequence) -> {
+                searchIndexes.add(new SearchIndex(piece.addTrack(index, sequence.getNotes()), sequence.getNotes()));
+                counters.tracks++;
+                counters.notes += sequence.getNotes().size();
+            });
+            session.persist(piece);
+            searchIndexes.forEach(session::persist);
+            counters.pieces++;
+        }
+        session.flush();
+    }
+
+    private static Map<String, Piece> findPieces(Session session, Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return Map.of();
+        }
+        return session
+                .createSelectionQuery("from Piece p where p.path in :paths", Piece.class)
+                .setParameterList("paths", paths)
+                .getResultList()
+                .stream()
+                .collect(Collectors.toMap(Piece::getPath, Function.identity()));
+    }
+}
@@ -0,0 +1,93 @@
+package com.stringintech.phrasewise.corpus;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Size, modification time and content hash of every corpus file seen so far, stored as one
+ * tab-separated line per file. A rescan only reads files whose size or modification time differ
+ * from their entry, and only re-parses those whose hash differs too. Not thread-safe.
+ */
+class CorpusManifest {
+    private static final String FAILED = "failed";
+    private static final String PARSED = "parsed";
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * @param failed whether the file could not be parsed, so an unchanged copy is not retried
+     */
+    record Entry(long size, long lastModified, String contentHash, boolean failed) {
+    }
+
+    private CorpusManifest(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the manifest, or starts an empty one if the file does not exist. Malformed lines are
+     * dropped; their files are simply hashed again.
+     */
+    static CorpusManifest load(Path file) throws IOException {
+        CorpusManifest manifest = new CorpusManifest(file);
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+        for (String line : Files.readAllLines(file)) {
+            String[] fields = line.split("\t", 5);
+            if (fields.length != 5) {
+                continue;
+            }
+            try {
+                manifest.entries.put(fields[4], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        fields[0], fields[3].equals(FAILED)));
+            } catch (NumberFormatException e) {
+                // Dropped like any other malformed line
+            }
+        }
+        return manifest;
+    }
+
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    void remove(String path) {
+        entries.remove(path);
+    }
+
+    Set<String> paths() {
+        return entries.keySet();
+    }
+
+    /**
+     * Writes the manifest to a temporary file first and moves it into place, so a crash never
+     * leaves a truncated manifest behind.
+     */
+    void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(String.join("\t", List.of(value.contentHash(), Long.toString(value.size()),
+                        Long.toString(value.lastModified()), value.failed() ? FAILED : PARSED, entry.getKey())));
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
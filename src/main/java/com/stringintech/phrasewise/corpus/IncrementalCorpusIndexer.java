@@ -0,0 +1,555 @@
+package com.stringintech.phrasewise.corpus;
+
+import com.stringintech.phrasewise.corpus.CorpusLoader.ParsedPiece;
+import com.stringintech.phrasewise.model.Piece;
+import com.stringintech.phrasewise.similarity.PassageSimilarityIndex;
+
+import javax.sound.midi.InvalidMidiDataException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Keeps an in-memory corpus, its similarity index and (optionally) the database in step with a set
+ * of corpus directories. Only files whose content hash changed are parsed again, and they are
+ * applied as deltas of at most one loader batch each: the database in one transaction, the
+ * similarity index in place, and the hashes and track indexes of the pieces as a new immutable
+ * snapshot. Readers never see a half-applied delta, and decoded notes are only held for the delta
+ * being applied, so even a first scan of a large corpus runs in bounded memory.
+ * <p>
+ * {@link #watch} drives updates from file system events. Events can be lost (queue overflow,
+ * changes made while nothing was watching), so the manifest of sizes, modification times and
+ * hashes is also compared against the disk on start-up, on overflow and periodically.
+ */
+public class IncrementalCorpusIndexer {
+    private static final long QUIET_PERIOD_MILLIS = 500;
+    private static final long MAX_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int DEFAULT_CHUNK_SIZE = 50;
+
+    private final List<Path> roots;
+    private final CorpusManifest manifest;
+    private final CorpusLoader corpusLoader;
+    private final int chunkSize;
+    private final PassageSimilarityIndex<String> similarityIndex = new PassageSimilarityIndex<>();
+    // Guards the similarity index and the switch to a new snapshot; writers hold it only to apply a delta
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Snapshot snapshot;
+
+    /**
+     * What the index knows about one piece: the hash of the file it was parsed from and the indexes
+     * of its non-empty tracks.
+     */
+    public record IndexedPiece(String contentHash, List<Integer> trackIndexes) {
+    }
+
+    /**
+     * An immutable view of the corpus. A reader holding a snapshot keeps seeing the same pieces no
+     * matter how many updates are applied meanwhile. Pieces are spread over fixed hash shards, and
+     * the next snapshot copies only the shards an update touches.
+     */
+    public static final class Snapshot {
+        private static final int SHARDS = 256;
+
+        private final long version;
+        private final Map<String, IndexedPiece>[] shards;
+        private final int size;
+
+        private Snapshot(long version, Map<String, IndexedPiece>[] shards, int size) {
+            this.version = version;
+            this.shards = shards;
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Snapshot of(Map<String, IndexedPiece> pieces) {
+            Map<String, IndexedPiece>[] shards = new Map[SHARDS];
+            for (int i = 0; i < SHARDS; i++) {
+                shards[i] = new HashMap<>();
+            }
+            pieces.forEach((path, piece) -> shards[shardOf(path)].put(path, piece));
+            return new Snapshot(0, shards, pieces.size());
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public IndexedPiece get(String path) {
+            return shards[shardOf(path)].get(path);
+        }
+
+        public boolean contains(String path) {
+            return get(path) != null;
+        }
+
+        public void forEach(BiConsumer<String, IndexedPiece> action) {
+            for (Map<String, IndexedPiece> shard : shards) {
+                shard.forEach(action);
+            }
+        }
+
+        /**
+         * Copies the indexed paths into a new set.
+         */
+        public Set<String> paths() {
+            Set<String> paths = new HashSet<>();
+            forEach((path, piece) -> paths.add(path));
+            return paths;
+        }
+
+        private Snapshot next(Map<String, IndexedPiece> upserts, Collection<String> removed) {
+            Map<String, IndexedPiece>[] next = shards.clone();
+            boolean[] copied = new boolean[SHARDS];
+            int nextSize = size;
+            for (String path : removed) {
+                if (writableShard(next, copied, path).remove(path) != null) {
+                    nextSize--;
+                }
+            }
+            for (Map.Entry<String, IndexedPiece> upsert : upserts.entrySet()) {
+                if (writableShard(next, copied, upsert.getKey()).put(upsert.getKey(), upsert.getValue()) == null) {
+                    nextSize++;
+                }
+            }
+            return new Snapshot(version + 1, next, nextSize);
+        }
+
+        private static Map<String, IndexedPiece> writableShard(Map<String, IndexedPiece>[] shards, boolean[] copied,
+                                                               String path) {
+            int shard = shardOf(path);
+            if (!copied[shard]) {
+                shards[shard] = new HashMap<>(shards[shard]);
+                copied[shard] = true;
+            }
+            return shards[shard];
+        }
+
+        private static int shardOf(String path) {
+            return Math.floorMod(path.hashCode(), SHARDS);
+        }
+    }
+
+    public record UpdateReport(int added, int changed, int removed, int unchanged, int failed, long elapsedNanos) {
+        public boolean hasChanges() {
+            return added + changed + removed > 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d added, %d changed, %d removed (%d unchanged, %d failed) in %.1f ms",
+                    added, changed, removed, unchanged, failed, elapsedNanos / 1e6);
+        }
+    }
+
+    private enum Status {UNCHANGED, PARSED, FAILED, MISSING}
+
+    private record Examined(String path, Status status, CorpusManifest.Entry entry, ParsedPiece parsed) {
+    }
+
+    /**
+     * Indexes the corpus in memory only; the first {@link #rescan()} parses every file.
+     */
+    public IncrementalCorpusIndexer(List<Path> roots, Path manifestFile) throws IOException {
+        this(roots, manifestFile, null);
+    }
+
+    /**
+     * Also keeps the database up to date. The in-memory corpus starts from the stored pieces, so
+     * files that are already stored and unchanged are never parsed. Their notes are streamed from
+     * the database once to build the similarity index and are not retained.
+     */
+    public IncrementalCorpusIndexer(List<Path> roots, Path manifestFile, CorpusLoader corpusLoader) throws IOException {
+        this.roots = roots.stream().map(root -> Path.of(CorpusLoader.pathKey(root))).toList();
+        for (Path root : this.roots) {
+            if (!Files.isDirectory(root)) {
+                throw new IllegalArgumentException("Not a directory: " + root);
+            }
+        }
+        this.manifest = CorpusManifest.load(manifestFile);
+        this.corpusLoader = corpusLoader;
+        this.chunkSize = corpusLoader != null ? corpusLoader.getBatchSize() : DEFAULT_CHUNK_SIZE;
+
+        Map<String, IndexedPiece> pieces = new HashMap<>();
+        if (corpusLoader != null) {
+            corpusLoader.forEachStoredTrack((track, sequence) -> {
+                Piece piece = track.getPiece();
+                if (isUnderRoot(piece.getPath())) {
+                    pieces.computeIfAbsent(piece.getPath(), path -> new IndexedPiece(piece.getContentHash(),
+                            new ArrayList<>())).trackIndexes().add(track.getTrackIndex());
+                    similarityIndex.add(trackKey(piece.getPath(), track.getTrackIndex()), sequence.getNotes());
+                }
+            });
+            pieces.replaceAll((path, piece) ->
+                    new IndexedPiece(piece.contentHash(), List.copyOf(piece.trackIndexes())));
+        }
+        this.snapshot = Snapshot.of(pieces);
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Runs a query against the similarity index and the snapshot it was built from.
+     */
+    public <T> T querySimilarity(BiFunction<Snapshot, PassageSimilarityIndex<String>, T> query) {
+        lock.readLock().lock();
+        try {
+            return query.apply(snapshot, similarityIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static String trackKey(String path, int trackIndex) {
+        return path + "#" + trackIndex;
+    }
+
+    /**
+     * Compares every file under the roots with the manifest and applies whatever changed.
+     */
+    public synchronized UpdateReport rescan() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            collectMidiFiles(root, files);
+        }
+        return apply(files, this::isUnderRoot);
+    }
+
+    /**
+     * Applies changes to the given files or directories only, as reported by file system events.
+     * Paths that no longer exist remove the pieces at or below them.
+     */
+    public synchronized UpdateReport update(Collection<Path> changedPaths) throws IOException {
+        // A new directory and the files created in it are often reported in the same burst
+        Set<Path> files = new LinkedHashSet<>();
+        Set<String> scopes = new HashSet<>();
+        for (Path changed : changedPaths) {
+            Path absolute = Path.of(CorpusLoader.pathKey(changed));
+            if (!isUnderRoot(absolute.toString())) {
+                continue;
+            }
+            scopes.add(absolute.toString());
+            collectMidiFiles(absolute, files);
+        }
+        return apply(new ArrayList<>(files), path -> scopes.contains(path) ||
+                scopes.stream().anyMatch(scope -> path.startsWith(scope + File.separator)));
+    }
+
+    /**
+     * Watches the roots until the calling thread is interrupted. A burst of events is applied once
+     * no further event arrived for a short quiet period, or after a few seconds at the latest. An
+     * update that fails is reported on stderr and retried a few seconds later with the same pending
+     * paths; only failing to set up the watch ends it.
+     */
+    public void watch(Duration rescanInterval, Consumer<UpdateReport> listener)
+            throws IOException, InterruptedException {
+        try (WatchService watchService = roots.getFirst().getFileSystem().newWatchService()) {
+            for (Path root : roots) {
+                register(watchService, root);
+            }
+            // The first cycle compares the whole corpus with the manifest
+            long nextRescan = System.nanoTime();
+            long retryAt = nextRescan;
+            Set<Path> changed = new LinkedHashSet<>();
+            long firstChange = 0;
+            boolean overflowed = false;
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflowed = true;
+                            continue;
+                        }
+                        Path child = directory.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE &&
+                                Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            try {
+                                register(watchService, child);
+                            } catch (NoSuchFileException e) {
+                                // Already gone again; the update of its path removes whatever was indexed
+                            } catch (IOException e) {
+                                // Files created in it would go unnoticed, so fall back to a rescan
+                                System.err.println("Cannot watch " + child + ": " + e);
+                                overflowed = true;
+                            }
+                        }
+                        if (changed.isEmpty()) {
+                            firstChange = System.nanoTime();
+                        }
+                        changed.add(child);
+                    }
+                    key.reset();
+                    if (changed.isEmpty() || System.nanoTime() - firstChange < MAX_DELAY_NANOS) {
+                        continue;
+                    }
+                }
+
+                boolean rescanDue = overflowed || System.nanoTime() >= nextRescan;
+                if ((!rescanDue && changed.isEmpty()) || System.nanoTime() < retryAt) {
+                    continue;
+                }
+                try {
+                    if (rescanDue) {
+                        listener.accept(rescan());
+                        nextRescan = System.nanoTime() + rescanInterval.toNanos();
+                        overflowed = false;
+                    } else {
+                        listener.accept(update(changed));
+                    }
+                    changed.clear();
+                } catch (IOException | RuntimeException e) {
+                    // The pending paths (or rescan) stay queued; whatever did get applied is found unchanged next time
+                    System.err.println("Corpus update failed, retrying: " + e);
+                    retryAt = System.nanoTime() + RETRY_DELAY_NANOS;
+                }
+            }
+        }
+    }
+
+    private UpdateReport apply(List<Path> files, Predicate<String> inScope) throws IOException {
+        long start = System.nanoTime();
+        Snapshot current = snapshot;
+
+        // Only files whose metadata moved away from the manifest are read and hashed
+        List<Path> candidates = new ArrayList<>();
+        Set<String> present = new HashSet<>();
+        int unchanged = 0;
+        for (Path file : files) {
+            String path = CorpusLoader.pathKey(file);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue;
+            } catch (IOException e) {
+                // Examined like any other candidate, which records the failure
+                present.add(path);
+                candidates.add(file);
+                continue;
+            }
+            present.add(path);
+            CorpusManifest.Entry entry = manifest.get(path);
+            if (entry != null && entry.size() == attributes.size() &&
+                    entry.lastModified() == attributes.lastModifiedTime().toMillis() &&
+                    isCurrent(current.get(path), entry)) {
+                unchanged++;
+            } else {
+                candidates.add(file);
+            }
+        }
+
+        List<String> vanished = new ArrayList<>();
+        current.forEach((path, piece) -> {
+            if (inScope.test(path) && !present.contains(path)) {
+                vanished.add(path);
+            }
+        });
+
+        // Parsed pieces are held one chunk at a time, so even a first scan of a large corpus is bounded
+        int added = 0;
+        int changed = 0;
+        int removed = 0;
+        int failed = 0;
+        int from = 0;
+        do {
+            List<Path> chunk = candidates.subList(from, Math.min(from + chunkSize, candidates.size()));
+            List<Examined> examined = chunk.parallelStream().map(file -> examine(file, current)).toList();
+
+            Map<String, ParsedPiece> upserts = new HashMap<>();
+            List<String> removals = new ArrayList<>(vanished);
+            vanished.clear();
+            for (Examined result : examined) {
+                boolean known = current.contains(result.path());
+                switch (result.status()) {
+                    case UNCHANGED -> unchanged++;
+                    case PARSED -> {
+                        upserts.put(result.path(), result.parsed());
+                        if (known) {
+                            changed++;
+                        } else {
+                            added++;
+                        }
+                    }
+                    case FAILED -> {
+                        failed++;
+                        // The stored version is stale; drop it rather than keep serving it
+                        if (known) {
+                            removals.add(result.path());
+                        }
+                    }
+                    case MISSING -> {
+                        present.remove(result.path());
+                        if (known) {
+                            removals.add(result.path());
+                        }
+                    }
+                }
+            }
+
+            if (!upserts.isEmpty() || !removals.isEmpty()) {
+                if (corpusLoader != null) {
+                    corpusLoader.apply(upserts.values(), removals);
+                }
+                publish(snapshot, upserts, removals);
+                removed += removals.size();
+            }
+            for (Examined result : examined) {
+                if (result.entry() == null) {
+                    manifest.remove(result.path());
+                } else {
+                    manifest.put(result.path(), result.entry());
+                }
+            }
+            from += chunkSize;
+        } while (from < candidates.size());
+
+        manifest.paths().removeIf(path -> inScope.test(path) && !present.contains(path));
+        manifest.save();
+
+        return new UpdateReport(added, changed, removed, unchanged, failed, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads, hashes and if necessary parses one file. Runs in parallel, so it only reads shared state.
+     * A file that cannot be parsed is recorded as failed in the manifest and skipped until it changes;
+     * one that cannot be read is failed without an entry, so the next scan tries it again.
+     */
+    private Examined examine(Path file, Snapshot current) {
+        String path = CorpusLoader.pathKey(file);
+        try {
+            // Attributes first: if the file changes while being read, the next scan sees newer metadata
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            byte[] content = Files.readAllBytes(file);
+            String hash = CorpusLoader.contentHash(content);
+            long lastModified = attributes.lastModifiedTime().toMillis();
+
+            IndexedPiece known = current.get(path);
+            if (known != null && known.contentHash().equals(hash)) {
+                return new Examined(path, Status.UNCHANGED,
+                        new CorpusManifest.Entry(attributes.size(), lastModified, hash, false), null);
+            }
+            try {
+                return new Examined(path, Status.PARSED,
+                        new CorpusManifest.Entry(attributes.size(), lastModified, hash, false),
+                        CorpusLoader.parse(path, hash, content));
+            } catch (InvalidMidiDataException | IOException e) {
+                // The content is already in memory: an IOException here is a truncated file, not a read error
+                System.err.println("Skipping " + file + ": " + e);
+                return new Examined(path, Status.FAILED,
+                        new CorpusManifest.Entry(attributes.size(), lastModified, hash, true), null);
+            }
+        } catch (NoSuchFileException e) {
+            return new Examined(path, Status.MISSING, null, null);
+        } catch (IOException e) {
+            System.err.println("Cannot read " + file + ": " + e);
+            return new Examined(path, Status.FAILED, null, null);
+        }
+    }
+
+    /**
+     * Builds the next snapshot off to the side, then swaps it in together with the similarity index
+     * changes under the write lock.
+     */
+    private void publish(Snapshot current, Map<String, ParsedPiece> upserts, List<String> removed) {
+        Map<String, IndexedPiece> indexed = new HashMap<>();
+        upserts.forEach((path, piece) ->
+                indexed.put(path, new IndexedPiece(piece.contentHash(), List.copyOf(piece.tracks().keySet()))));
+        Snapshot next = current.next(indexed, removed);
+
+        lock.writeLock().lock();
+        try {
+            for (String path : removed) {
+                removeFromSimilarityIndex(path, current.get(path));
+            }
+            for (ParsedPiece piece : upserts.values()) {
+                removeFromSimilarityIndex(piece.path(), current.get(piece.path()));
+                piece.tracks().forEach((index, sequence) ->
+                        similarityIndex.add(trackKey(piece.path(), index), sequence.getNotes()));
+            }
+            snapshot = next;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeFromSimilarityIndex(String path, IndexedPiece piece) {
+        if (piece != null) {
+            piece.trackIndexes().forEach(index -> similarityIndex.remove(trackKey(path, index)));
+        }
+    }
+
+    /**
+     * Whether the indexed state agrees with a manifest entry: the stored piece has the recorded
+     * hash, or the file is known to be unparseable and nothing is stored.
+     */
+    private static boolean isCurrent(IndexedPiece known, CorpusManifest.Entry entry) {
+        return known == null ? entry.failed() : !entry.failed() && known.contentHash().equals(entry.contentHash());
+    }
+
+    private boolean isUnderRoot(String path) {
+        return roots.stream().anyMatch(root -> path.startsWith(root + File.separator));
+    }
+
+    private static void collectMidiFiles(Path path, Collection<Path> files) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.filter(Files::isRegularFile).filter(CorpusLoader::isMidiFile).forEach(files::add);
+            } catch (UncheckedIOException e) {
+                // A directory vanished mid-walk; the next rescan picks up anything this misses
+                if (!(e.getCause() instanceof NoSuchFileException)) {
+                    throw e.getCause();
+                }
+            }
+        } else if (Files.isRegularFile(path) && CorpusLoader.isMidiFile(path)) {
+            files.add(path);
+        }
+    }
+
+    private static void register(WatchService watchService, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
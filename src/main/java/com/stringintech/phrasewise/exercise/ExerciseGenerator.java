@@ -0,0 +1,66 @@
+package com.stringintech.phrasewise.exercise;
+
+import com.stringintech.phrasewise.core.Key;
+import com.stringintech.phrasewise.midi.MidiNote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Builds practice variants of phrases: each phrase in all 12 keys, each key in every octave that
+ * fits the instrument's range. Keys are taken from -5 to +6 semitones around the original so that
+ * the unshifted octave stays close to the written register.
+ */
+public class ExerciseGenerator {
+    private static final int LOWEST_KEY_SHIFT = -5;
+    private static final int KEYS = 12;
+    private static final int MAX_OCTAVE_SHIFT = 8;
+
+    private final InstrumentRange range;
+
+    public record Exercise(int phraseIndex, Key key, int octaveShift, List<MidiNote> notes) {
+        public String title() {
+            String title = "Phrase " + (phraseIndex + 1) + ", " + key.getTonic().getSymbol() + " " +
+                    key.getMode().toString().toLowerCase();
+            if (octaveShift == 0) {
+                return title;
+            }
+            return title + String.format(" (%+d octave%s)", octaveShift, Math.abs(octaveShift) == 1 ? "" : "s");
+        }
+    }
+
+    public ExerciseGenerator(InstrumentRange range) {
+        this.range = range;
+    }
+
+    /**
+     * Generates the variants of all phrases in parallel, ordered by phrase, key and octave.
+     */
+    public List<Exercise> generate(List<List<MidiNote>> phrases, Key key) {
+        return IntStream.range(0, phrases.size() * KEYS)
+                .parallel()
+                .mapToObj(i -> variants(i / KEYS, phrases.get(i / KEYS), key, LOWEST_KEY_SHIFT + i % KEYS))
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    private List<Exercise> variants(int phraseIndex, List<MidiNote> phrase, Key key, int keyShift) {
+        Key transposedKey = key.transpose(keyShift);
+        List<Exercise> exercises = new ArrayList<>();
+        for (int octaveShift = -MAX_OCTAVE_SHIFT; octaveShift <= MAX_OCTAVE_SHIFT; octaveShift++) {
+            int transposition = keyShift + 12 * octaveShift;
+            if (range.fits(phrase, transposition)) {
+                exercises.add(new Exercise(phraseIndex, transposedKey, octaveShift, transpose(phrase, transposition)));
+            }
+        }
+        return exercises;
+    }
+
+    private static List<MidiNote> transpose(List<MidiNote> phrase, int semitones) {
+        return phrase.stream()
+                .map(note -> new MidiNote(note.pitch() + semitones, note.startTick(), note.duration(),
+                        note.velocity(), note.channel()))
+                .toList();
+    }
+}
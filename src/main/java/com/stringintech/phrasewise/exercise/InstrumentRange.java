@@ -0,0 +1,28 @@
+package com.stringintech.phrasewise.exercise;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+
+import java.util.List;
+
+/**
+ * Playable MIDI pitch range of an instrument, both ends inclusive.
+ */
+public record InstrumentRange(int lowestPitch, int highestPitch) {
+    public static final InstrumentRange CELLO = new InstrumentRange(36, 81); // C2 - A5
+
+    public InstrumentRange {
+        if (lowestPitch > highestPitch) {
+            throw new IllegalArgumentException("Lowest pitch must not be above highest pitch");
+        }
+    }
+
+    public boolean fits(List<MidiNote> notes, int transposition) {
+        for (MidiNote note : notes) {
+            int pitch = note.pitch() + transposition;
+            if (pitch < lowestPitch || pitch > highestPitch) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
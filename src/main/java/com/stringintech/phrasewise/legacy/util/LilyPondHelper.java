@@ -30,18 +30,50 @@ public class LilyPondHelper {
             Map.entry(12, "#FF6600") // VII
     );
 
+    public record ScoreVariant(String title, List<MidiNote> phrase, Key key) {
+    }
+
     public static void createColoredScore(List<MidiNote> phrase, int resolution, Key key, Path outputPath) throws IOException {
         StringBuilder lily = new StringBuilder();
 
         // Add version and required includes
         lily.append("\\version \"2.20.0\"\n\n");
+        appendScore(lily, phrase, resolution, key, null, true);
 
+        // Write to file
+        try (FileWriter writer = new FileWriter(outputPath.toFile())) {
+            writer.write(lily.toString());
+        }
+    }
+
+    /**
+     * Writes all variants as separate scores of one LilyPond book, so the whole set is compiled by a
+     * single LilyPond run. Scores are rendered in parallel and written in the given order; no MIDI
+     * output is requested for them.
+     */
+    public static void createColoredScoreBook(List<ScoreVariant> variants, int resolution, Path outputPath) throws IOException {
+        List<String> scores = variants.parallelStream()
+                .map(variant -> appendScore(new StringBuilder(), variant.phrase(), resolution, variant.key(), variant.title(), false).toString())
+                .toList();
+
+        try (FileWriter writer = new FileWriter(outputPath.toFile())) {
+            writer.write("\\version \"2.20.0\"\n\n");
+            writer.write("\\book {\n");
+            for (String score : scores) {
+                writer.write(score);
+            }
+            writer.write("}\n");
+        }
+    }
+
+    private static StringBuilder appendScore(StringBuilder lily, List<MidiNote> phrase, int resolution, Key key,
+                                             String title, boolean withMidi) {
         // Add score structure
         lily.append("\\score {\n");
         lily.append("  \\new Staff {\n");
         lily.append("    \\time 4/4\n");
-        lily.append("    \\key ").append("d").append(" \\minor\n"); //TODO
-        lily.append("    \\clef bass\n\n"); //TODO
+        lily.append("    \\key ").append(LilypondNotationHelper.keyToLilyPond(key)).append("\n");
+        lily.append("    \\clef ").append(clefFor(phrase)).append("\n\n");
 
         // Process each note in the phrase
         for (MidiNote note : phrase) {
@@ -61,14 +93,20 @@ public class LilyPondHelper {
 
         // Close score structure
         lily.append("\n  }\n");
+        if (title != null) {
+            lily.append("  \\header { piece = \"").append(title).append("\" }\n");
+        }
         lily.append("  \\layout { }\n");
-        lily.append("  \\midi { }\n");
+        if (withMidi) {
+            lily.append("  \\midi { }\n");
+        }
         lily.append("}\n");
+        return lily;
+    }
 
-        // Write to file
-        try (FileWriter writer = new FileWriter(outputPath.toFile())) {
-            writer.write(lily.toString());
-        }
+    private static String clefFor(List<MidiNote> phrase) {
+        double averagePitch = phrase.stream().mapToInt(MidiNote::pitch).average().orElse(0);
+        return averagePitch >= 60 ? "treble" : "bass";
     }
 
     private static int calculateChromaticDegree(int notePitch, Spelling tonic) { //FIXME the whole helper should be refactored
@@ -12,6 +12,10 @@ public class LilypondNotationHelper {
                 getOctaveMarks(pitch.getOctave());
     }
 
+    public static String keyToLilyPond(Key key) {
+        return spellingToLilyPond(key.getTonic()) + " \\" + key.getMode().toString().toLowerCase();
+    }
+
     private static String spellingToLilyPond(Spelling spelling) {
         String base = spelling.name().toString().toLowerCase();
         return base + switch (spelling.accidental()) {
@@ -2,14 +2,24 @@ package com.stringintech.phrasewise.midi;
 
 import com.stringintech.phrasewise.core.Spelling;
 
+import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Track;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
+/**
+ * Notes are kept sorted by start tick from construction on, so searches only read the list and one
+ * sequence can be queried from several threads.
+ */
 public class MonophonicMidiSequence {
     private final List<MidiNote> notes;
     private final int resolution;
@@ -20,49 +30,78 @@ public class MonophonicMidiSequence {
     public MonophonicMidiSequence(Track track, int resolution) {
         this.resolution = resolution;
         this.notes = new ArrayList<>();
-        int currentNotePitch = -1;
-        long currentNoteStart = -1;
-        int currentVelocity = 0;
-        int currentChannel = 0;
+        MonophonicNoteTracker tracker = new MonophonicNoteTracker();
 
         for (int i = 0; i < track.size(); i++) {
             MidiEvent event = track.get(i);
             MidiMessage message = event.getMessage();
 
             if (message instanceof ShortMessage sm) {
-                int command = sm.getCommand();
                 int pitch = sm.getData1();
-                int velocity = sm.getData2();
-                int channel = sm.getChannel();
 
-                if (command == ShortMessage.NOTE_ON && velocity > 0) {
-                    if (currentNotePitch != -1) {
+                if (MonophonicNoteTracker.isNoteOn(sm)) {
+                    if (tracker.isSounding()) {
                         throw new IllegalStateException("Multiple notes playing simultaneously");
                     }
-                    currentNotePitch = pitch;
-                    currentNoteStart = event.getTick();
-                    currentVelocity = velocity;
-                    currentChannel = channel;
-                } else if ((command == ShortMessage.NOTE_OFF) ||
-                        (command == ShortMessage.NOTE_ON && velocity == 0)) {
-                    if (currentNotePitch == pitch) {
+                    tracker.start(pitch, event.getTick(), sm.getData2(), sm.getChannel());
+                } else if (MonophonicNoteTracker.isNoteOff(sm)) {
+                    if (tracker.stop(pitch)) {
                         this.notes.add(new MidiNote(
                                 pitch,
-                                currentNoteStart,
-                                event.getTick() - currentNoteStart,
-                                currentVelocity,
-                                currentChannel
+                                tracker.getStartTick(),
+                                event.getTick() - tracker.getStartTick(),
+                                tracker.getVelocity(),
+                                tracker.getChannel()
                         ));
-                        currentNotePitch = -1;
                     }
                 }
             }
         }
     }
 
+    /**
+     * Reduces a possibly polyphonic track to one line in a single pass over its events instead of
+     * rejecting overlapping notes.
+     */
+    public MonophonicMidiSequence(Track track, int resolution, VoiceReduction reduction) {
+        this.resolution = resolution;
+        VoiceReducer reducer = new VoiceReducer(reduction);
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            if (event.getMessage() instanceof ShortMessage sm) {
+                reducer.accept(sm, event.getTick());
+            }
+        }
+        this.notes = reducer.getNotes();
+    }
+
+    public MonophonicMidiSequence(List<MidiNote> notes, int resolution) {
+        this.resolution = resolution;
+        this.notes = new ArrayList<>(notes);
+        this.notes.sort(Comparator.comparingLong(MidiNote::startTick));
+    }
+
+    /**
+     * Reads the main track of a MIDI file, i.e. the first track after the conductor track.
+     */
+    public static MonophonicMidiSequence readMainTrack(Path midiPath, VoiceReduction reduction)
+            throws InvalidMidiDataException, IOException {
+        Sequence sequence = MidiSystem.getSequence(midiPath.toFile());
+        Track[] tracks = sequence.getTracks();
+        if (tracks.length < 2) {
+            throw new IllegalArgumentException("MIDI file must have at least 2 tracks");
+        }
+        return new MonophonicMidiSequence(tracks[1], sequence.getResolution(), reduction);
+    }
+
+    public static List<MonophonicMidiSequence> fromTracks(Sequence sequence, VoiceReduction reduction) {
+        return Arrays.stream(sequence.getTracks())
+                .map(track -> new MonophonicMidiSequence(track, sequence.getResolution(), reduction))
+                .toList();
+    }
+
     public NoteSequenceMatch findNoteSequence(List<Spelling> searchSpellings, long startFromTick) {
         List<MidiNote> allNotes = this.getNotes();
-        allNotes.sort(Comparator.comparingLong(MidiNote::startTick));
 
         int startIndex = 0;
         while (startIndex < allNotes.size() && allNotes.get(startIndex).startTick() < startFromTick) {
@@ -85,6 +124,36 @@ public class MonophonicMidiSequence {
         return null;
     }
 
+    /**
+     * Like {@link #findNoteSequence} but transposition-invariant: matches notes whose successive
+     * intervals (mod 12) equal those between the search spellings.
+     */
+    public NoteSequenceMatch findIntervalSequence(List<Spelling> searchSpellings, long startFromTick) {
+        List<MidiNote> allNotes = this.getNotes();
+
+        int startIndex = 0;
+        while (startIndex < allNotes.size() && allNotes.get(startIndex).startTick() < startFromTick) {
+            startIndex++;
+        }
+
+        for (int i = startIndex; i <= allNotes.size() - searchSpellings.size(); i++) {
+            boolean matches = true;
+            for (int j = 1; j < searchSpellings.size(); j++) {
+                int noteInterval = allNotes.get(i + j).pitch() - allNotes.get(i + j - 1).pitch();
+                int searchInterval = searchSpellings.get(j).getBasePitch() - searchSpellings.get(j - 1).getBasePitch();
+                if (Math.floorMod(noteInterval, 12) != Math.floorMod(searchInterval, 12)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                List<MidiNote> matchingNotes = allNotes.subList(i, i + searchSpellings.size());
+                return new NoteSequenceMatch(matchingNotes, matchingNotes.getFirst().startTick());
+            }
+        }
+        return null;
+    }
+
     public List<MidiNote> findPhraseBetweenSequences(List<Spelling> startSpellings,
                                                      List<Spelling> endSpellings) {
         NoteSequenceMatch startMatch = findNoteSequence(startSpellings, 0);
@@ -0,0 +1,69 @@
+package com.stringintech.phrasewise.midi;
+
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Pairs note-on/note-off messages of a single sounding voice. Keeps only primitive state so it can
+ * be fed from a live {@link javax.sound.midi.Receiver} without allocating per event.
+ */
+class MonophonicNoteTracker {
+    private int pitch = -1;
+    private long startTick = -1;
+    private int velocity = 0;
+    private int channel = 0;
+
+    static boolean isNoteOn(ShortMessage sm) {
+        return sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() > 0;
+    }
+
+    static boolean isNoteOff(ShortMessage sm) {
+        return sm.getCommand() == ShortMessage.NOTE_OFF ||
+                (sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() == 0);
+    }
+
+    boolean isSounding() {
+        return pitch != -1;
+    }
+
+    void start(int pitch, long tick, int velocity, int channel) {
+        this.pitch = pitch;
+        this.startTick = tick;
+        this.velocity = velocity;
+        this.channel = channel;
+    }
+
+    /**
+     * Releases the sounding note if it has the given pitch. The released note's start, velocity and
+     * channel stay readable until the next {@link #start}.
+     */
+    boolean stop(int pitch) {
+        if (this.pitch != pitch) {
+            return false;
+        }
+        this.pitch = -1;
+        return true;
+    }
+
+    void reset() {
+        pitch = -1;
+        startTick = -1;
+        velocity = 0;
+        channel = 0;
+    }
+
+    int getPitch() {
+        return pitch;
+    }
+
+    long getStartTick() {
+        return startTick;
+    }
+
+    int getVelocity() {
+        return velocity;
+    }
+
+    int getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,59 @@
+package com.stringintech.phrasewise.midi;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * All notes of a track, overlaps included. A note-on for a key that is already sounding on the same
+ * channel closes the earlier note first.
+ */
+public class PolyphonicMidiSequence {
+    private static final int KEYS = 16 * 128;
+
+    private final List<MidiNote> notes;
+    private final int resolution;
+
+    public PolyphonicMidiSequence(Track track, int resolution) {
+        this.resolution = resolution;
+        this.notes = new ArrayList<>();
+        long[] startTicks = new long[KEYS];
+        int[] velocities = new int[KEYS];
+        Arrays.fill(startTicks, -1);
+
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            if (!(event.getMessage() instanceof ShortMessage sm)) {
+                continue;
+            }
+            boolean noteOn = MonophonicNoteTracker.isNoteOn(sm);
+            if (!noteOn && !MonophonicNoteTracker.isNoteOff(sm)) {
+                continue;
+            }
+
+            int key = sm.getChannel() * 128 + sm.getData1();
+            if (startTicks[key] != -1) {
+                notes.add(new MidiNote(sm.getData1(), startTicks[key], event.getTick() - startTicks[key],
+                        velocities[key], sm.getChannel()));
+                startTicks[key] = -1;
+            }
+            if (noteOn) {
+                startTicks[key] = event.getTick();
+                velocities[key] = sm.getData2();
+            }
+        }
+        notes.sort(Comparator.comparingLong(MidiNote::startTick).thenComparingInt(MidiNote::pitch));
+    }
+
+    public List<MidiNote> getNotes() {
+        return notes;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+}
@@ -0,0 +1,125 @@
+package com.stringintech.phrasewise.midi;
+
+import com.stringintech.phrasewise.core.Spelling;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incrementally matches incoming note events against a fixed set of indexed sequences, e.g. from a
+ * MIDI keyboard or a track being replayed. Every sequence keeps its own KMP automaton state, so each
+ * note-on costs amortized O(number of sequences) with no allocation on the event path.
+ * <p>
+ * Matches are reported on the note-on of the last matching note. Not thread-safe: feed it from a
+ * single thread, as {@link javax.sound.midi.Transmitter}s do.
+ */
+public class StreamingSequenceMatcher implements Receiver {
+    public interface MatchListener {
+        void onMatch(int sequenceIndex, long startTick, long lastNoteTick);
+    }
+
+    private final int[][] patterns;
+    private final int[][] failures;
+    private final int[] states;
+    private final long[] onsetTicks;
+    private final MatchListener listener;
+    private final MonophonicNoteTracker tracker = new MonophonicNoteTracker();
+    private long noteCount = 0;
+
+    public StreamingSequenceMatcher(List<List<Spelling>> sequences, MatchListener listener) {
+        this.patterns = new int[sequences.size()][];
+        this.failures = new int[sequences.size()][];
+        this.states = new int[sequences.size()];
+        this.listener = listener;
+
+        int maxLength = 1;
+        for (int i = 0; i < sequences.size(); i++) {
+            List<Spelling> sequence = sequences.get(i);
+            if (sequence.isEmpty()) {
+                throw new IllegalArgumentException("Sequence " + i + " is empty");
+            }
+            patterns[i] = sequence.stream().mapToInt(Spelling::getBasePitch).map(p -> Math.floorMod(p, 12)).toArray();
+            failures[i] = failureFunction(patterns[i]);
+            maxLength = Math.max(maxLength, patterns[i].length);
+        }
+        this.onsetTicks = new long[maxLength];
+    }
+
+    /**
+     * Feeds a message stamped with the caller's time base (ticks when replaying a track, microseconds
+     * when fed live); reported match positions use the same base.
+     */
+    public void accept(ShortMessage sm, long tick) {
+        if (MonophonicNoteTracker.isNoteOn(sm)) {
+            // Live players overlap notes when playing legato; the newer note takes over the voice.
+            tracker.start(sm.getData1(), tick, sm.getData2(), sm.getChannel());
+            onNoteOn(sm.getData1() % 12, tick);
+        } else if (MonophonicNoteTracker.isNoteOff(sm)) {
+            tracker.stop(sm.getData1());
+        }
+    }
+
+    @Override
+    public void send(MidiMessage message, long timeStamp) {
+        if (message instanceof ShortMessage sm) {
+            accept(sm, timeStamp);
+        }
+    }
+
+    @Override
+    public void close() {
+        reset();
+    }
+
+    public void reset() {
+        Arrays.fill(states, 0);
+        tracker.reset();
+        noteCount = 0;
+    }
+
+    public boolean isNoteSounding() {
+        return tracker.isSounding();
+    }
+
+    private void onNoteOn(int pitchClass, long tick) {
+        onsetTicks[(int) (noteCount % onsetTicks.length)] = tick;
+        noteCount++;
+
+        for (int i = 0; i < patterns.length; i++) {
+            int[] pattern = patterns[i];
+            int[] failure = failures[i];
+            int state = states[i];
+
+            while (state > 0 && pattern[state] != pitchClass) {
+                state = failure[state - 1];
+            }
+            if (pattern[state] == pitchClass) {
+                state++;
+            }
+            if (state == pattern.length) {
+                long startTick = onsetTicks[(int) ((noteCount - pattern.length) % onsetTicks.length)];
+                listener.onMatch(i, startTick, tick);
+                state = failure[state - 1];
+            }
+            states[i] = state;
+        }
+    }
+
+    private static int[] failureFunction(int[] pattern) {
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,106 @@
+package com.stringintech.phrasewise.midi;
+
+import javax.sound.midi.ShortMessage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass reduction of a polyphonic event stream to one monophonic line. Besides the note
+ * selected for the line, the number of held strikes per channel and pitch is tracked, so a
+ * re-struck key is only released by its last note-off and the line can drop back to a note that
+ * is still held once the selected one ends. The held keys are also kept as a dense list, so picking
+ * the note to drop back to only looks at the keys actually held.
+ */
+class VoiceReducer {
+    private static final int KEYS = 16 * 128;
+
+    private final VoiceReduction reduction;
+    private final MonophonicNoteTracker voice = new MonophonicNoteTracker();
+    private final int[] held = new int[KEYS];
+    private final int[] velocities = new int[KEYS];
+    // Keys with held[key] > 0, in no particular order; positions[key] is the key's index in heldKeys
+    private final int[] heldKeys = new int[KEYS];
+    private final int[] positions = new int[KEYS];
+    private int heldCount;
+    private final List<MidiNote> notes = new ArrayList<>();
+
+    VoiceReducer(VoiceReduction reduction) {
+        this.reduction = reduction;
+    }
+
+    void accept(ShortMessage sm, long tick) {
+        int pitch = sm.getData1();
+        int key = sm.getChannel() * 128 + pitch;
+
+        if (MonophonicNoteTracker.isNoteOn(sm)) {
+            if (held[key]++ == 0) {
+                positions[key] = heldCount;
+                heldKeys[heldCount++] = key;
+            }
+            velocities[key] = sm.getData2();
+            if (!voice.isSounding()) {
+                voice.start(pitch, tick, sm.getData2(), sm.getChannel());
+            } else if (tick == voice.getStartTick()) {
+                if (reduction.prefersInChord(pitch, voice.getPitch())) {
+                    voice.start(pitch, tick, sm.getData2(), sm.getChannel());
+                }
+            } else if (isSelected(key) || reduction.takesOver(pitch, voice.getPitch())) {
+                // A re-struck selected key is articulated again like any note that takes over
+                emit(tick);
+                voice.start(pitch, tick, sm.getData2(), sm.getChannel());
+            }
+        } else if (MonophonicNoteTracker.isNoteOff(sm) && held[key] > 0) {
+            // With overlapping strikes of one key, earlier note-offs belong to the earlier strikes
+            if (--held[key] == 0) {
+                release(key);
+                if (isSelected(key)) {
+                    emit(tick);
+                    voice.stop(pitch);
+                    if (reduction.resumesHeldNotes()) {
+                        resume(tick);
+                    }
+                }
+            }
+        }
+    }
+
+    List<MidiNote> getNotes() {
+        return notes;
+    }
+
+    private boolean isSelected(int key) {
+        return voice.isSounding() && voice.getChannel() * 128 + voice.getPitch() == key;
+    }
+
+    /**
+     * Picks the preferred note among those still held, as if they had all been struck at this tick.
+     */
+    private void resume(long tick) {
+        int best = -1;
+        for (int i = 0; i < heldCount; i++) {
+            int key = heldKeys[i];
+            // The same pitch held on several channels resumes on the lowest one
+            if (best == -1 || reduction.prefersInChord(key % 128, best % 128) ||
+                    (key % 128 == best % 128 && key < best)) {
+                best = key;
+            }
+        }
+        if (best != -1) {
+            voice.start(best % 128, tick, velocities[best], best / 128);
+        }
+    }
+
+    private void release(int key) {
+        int last = heldKeys[--heldCount];
+        heldKeys[positions[key]] = last;
+        positions[last] = positions[key];
+    }
+
+    private void emit(long endTick) {
+        long duration = endTick - voice.getStartTick();
+        if (duration > 0) {
+            notes.add(new MidiNote(voice.getPitch(), voice.getStartTick(), duration,
+                    voice.getVelocity(), voice.getChannel()));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.stringintech.phrasewise.midi;
+
+/**
+ * Strategy for reducing overlapping notes to a single line. Onsets sharing a tick are treated as a
+ * chord and resolved first; a later onset then either takes over the sounding note (which is cut
+ * at that tick) or is held back, and may be resumed once the selected note is released.
+ */
+public enum VoiceReduction {
+    /** Top voice: keeps the highest held note; higher onsets cut lower notes. */
+    SKYLINE,
+    /** Bass line: keeps the lowest held note; lower onsets cut higher notes. */
+    BASS,
+    /** Legato cleanup: every new onset cuts the sounding note for good; chords keep their highest note. */
+    TRIM_OVERLAPS;
+
+    boolean prefersInChord(int pitch, int soundingPitch) {
+        return switch (this) {
+            case SKYLINE, TRIM_OVERLAPS -> pitch > soundingPitch;
+            case BASS -> pitch < soundingPitch;
+        };
+    }
+
+    boolean takesOver(int pitch, int soundingPitch) {
+        return switch (this) {
+            case SKYLINE -> pitch > soundingPitch;
+            case BASS -> pitch < soundingPitch;
+            case TRIM_OVERLAPS -> true;
+        };
+    }
+
+    /**
+     * Whether the line drops back to a note that is still held when the selected one is released.
+     */
+    boolean resumesHeldNotes() {
+        return switch (this) {
+            case SKYLINE, BASS -> true;
+            case TRIM_OVERLAPS -> false;
+        };
+    }
+}
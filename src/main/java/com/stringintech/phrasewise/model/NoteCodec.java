@@ -0,0 +1,82 @@
+package com.stringintech.phrasewise.model;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs notes into the binary column of {@link PieceTrack}. Start ticks are delta encoded against
+ * the previous note and all integers are written as unsigned varints, so a typical note takes 5-7
+ * bytes instead of a table row.
+ */
+public final class NoteCodec {
+    private static final int VERSION = 1;
+
+    private NoteCodec() {
+    }
+
+    public static byte[] encode(List<MidiNote> notes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(notes.size() * 6 + 8);
+        writeVarLong(out, VERSION);
+        writeVarLong(out, notes.size());
+        long previousStart = 0;
+        for (MidiNote note : notes) {
+            if (note.startTick() < previousStart) {
+                throw new IllegalArgumentException("Notes must be sorted by start tick");
+            }
+            writeVarLong(out, note.startTick() - previousStart);
+            writeVarLong(out, note.duration());
+            out.write(note.pitch());
+            out.write(note.velocity());
+            out.write(note.channel());
+            previousStart = note.startTick();
+        }
+        return out.toByteArray();
+    }
+
+    public static List<MidiNote> decode(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        long version = readVarLong(in);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported note encoding version: " + version);
+        }
+        int size = (int) readVarLong(in);
+        List<MidiNote> notes = new ArrayList<>(size);
+        long start = 0;
+        for (int i = 0; i < size; i++) {
+            start += readVarLong(in);
+            long duration = readVarLong(in);
+            int pitch = in.get() & 0xFF;
+            int velocity = in.get() & 0xFF;
+            int channel = in.get() & 0xFF;
+            notes.add(new MidiNote(pitch, start, duration, velocity, channel));
+        }
+        return notes;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative values cannot be encoded: " + value);
+        }
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
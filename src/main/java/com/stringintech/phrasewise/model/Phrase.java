@@ -0,0 +1,80 @@
+package com.stringintech.phrasewise.model;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.util.List;
+
+/**
+ * A named passage of a track, stored as tick bounds into the track's notes.
+ */
+@Entity
+@Table(name = "phrase")
+public class Phrase {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "track_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private PieceTrack track;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private long startTick;
+
+    @Column(nullable = false)
+    private long endTick;
+
+    protected Phrase() {
+    }
+
+    public Phrase(PieceTrack track, String name, long startTick, long endTick) {
+        if (endTick <= startTick) {
+            throw new IllegalArgumentException("Phrase must end after it starts");
+        }
+        this.track = track;
+        this.name = name;
+        this.startTick = startTick;
+        this.endTick = endTick;
+    }
+
+    public List<MidiNote> getNotes() {
+        return track.getNotes().stream()
+                .filter(note -> note.startTick() >= startTick && note.startTick() < endTick)
+                .toList();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public PieceTrack getTrack() {
+        return track;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartTick() {
+        return startTick;
+    }
+
+    public long getEndTick() {
+        return endTick;
+    }
+}
@@ -0,0 +1,70 @@
+package com.stringintech.phrasewise.model;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Entity
+@Table(name = "piece")
+public class Piece {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 1024)
+    private String path;
+
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private int resolution;
+
+    // Tracks are removed by the database along with the piece, so deleting one never loads its notes
+    @OneToMany(mappedBy = "piece", cascade = CascadeType.PERSIST)
+    private List<PieceTrack> tracks = new ArrayList<>();
+
+    protected Piece() {
+    }
+
+    public Piece(String path, String contentHash, int resolution) {
+        this.path = path;
+        this.contentHash = contentHash;
+        this.resolution = resolution;
+    }
+
+    public PieceTrack addTrack(int trackIndex, List<MidiNote> notes) {
+        PieceTrack track = new PieceTrack(this, trackIndex, notes);
+        tracks.add(track);
+        return track;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public List<PieceTrack> getTracks() {
+        return tracks;
+    }
+}
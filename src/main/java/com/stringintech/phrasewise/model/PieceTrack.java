@@ -0,0 +1,78 @@
+package com.stringintech.phrasewise.model;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+import com.stringintech.phrasewise.midi.MonophonicMidiSequence;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import org.hibernate.Length;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.util.List;
+
+/**
+ * One monophonic line of a piece. Notes are stored as a single {@link NoteCodec} blob rather than a
+ * row per note. Its {@link SearchIndex} is persisted separately and removed by the database.
+ */
+@Entity
+@Table(name = "piece_track")
+public class PieceTrack {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "piece_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Piece piece;
+
+    @Column(nullable = false)
+    private int trackIndex;
+
+    @Column(nullable = false)
+    private int noteCount;
+
+    @Column(nullable = false, length = Length.LONG32)
+    private byte[] notes;
+
+    protected PieceTrack() {
+    }
+
+    PieceTrack(Piece piece, int trackIndex, List<MidiNote> notes) {
+        this.piece = piece;
+        this.trackIndex = trackIndex;
+        this.noteCount = notes.size();
+        this.notes = NoteCodec.encode(notes);
+    }
+
+    public MonophonicMidiSequence toSequence() {
+        return new MonophonicMidiSequence(getNotes(), piece.getResolution());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Piece getPiece() {
+        return piece;
+    }
+
+    public int getTrackIndex() {
+        return trackIndex;
+    }
+
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    public List<MidiNote> getNotes() {
+        return NoteCodec.decode(notes);
+    }
+}
@@ -0,0 +1,67 @@
+package com.stringintech.phrasewise.model;
+
+import com.stringintech.phrasewise.core.Spelling;
+import com.stringintech.phrasewise.midi.MidiNote;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Text encodings of a note line with one character per pitch class ('0'-'9', 'a', 'b') or per
+ * interval (semitones between consecutive notes, mod 12), so that sequence search becomes
+ * substring search.
+ */
+public final class PitchClassEncoding {
+    public static final int GRAM_LENGTH = 3;
+
+    private PitchClassEncoding() {
+    }
+
+    public static String pitchClasses(List<MidiNote> notes) {
+        StringBuilder encoded = new StringBuilder(notes.size());
+        for (MidiNote note : notes) {
+            encoded.append(symbol(note.pitch()));
+        }
+        return encoded.toString();
+    }
+
+    public static String intervals(List<MidiNote> notes) {
+        StringBuilder encoded = new StringBuilder(Math.max(0, notes.size() - 1));
+        for (int i = 1; i < notes.size(); i++) {
+            encoded.append(symbol(notes.get(i).pitch() - notes.get(i - 1).pitch()));
+        }
+        return encoded.toString();
+    }
+
+    public static String pitchClassesOf(List<Spelling> spellings) {
+        StringBuilder encoded = new StringBuilder(spellings.size());
+        for (Spelling spelling : spellings) {
+            encoded.append(symbol(spelling.getBasePitch()));
+        }
+        return encoded.toString();
+    }
+
+    public static String intervalsOf(List<Spelling> spellings) {
+        StringBuilder encoded = new StringBuilder(Math.max(0, spellings.size() - 1));
+        for (int i = 1; i < spellings.size(); i++) {
+            encoded.append(symbol(spellings.get(i).getBasePitch() - spellings.get(i - 1).getBasePitch()));
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Distinct overlapping substrings of length {@value #GRAM_LENGTH}, in order of first occurrence.
+     */
+    public static Set<String> grams(String encoded) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= encoded.length(); i++) {
+            grams.add(encoded.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    static char symbol(int semitones) {
+        return Character.forDigit(Math.floorMod(semitones, 12), 12);
+    }
+}
@@ -0,0 +1,81 @@
+package com.stringintech.phrasewise.model;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapsId;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
+import org.hibernate.Length;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searchable text form of a track, see {@link PitchClassEncoding}. It shares the track's id and
+ * only this side maps the association, so loading a track never reads the index text.
+ */
+@Entity
+@Table(name = "search_index")
+public class SearchIndex {
+    @Id
+    private Long id;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "track_id")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private PieceTrack track;
+
+    @Column(nullable = false, length = Length.LONG32)
+    private String pitchClasses;
+
+    @Column(nullable = false, length = Length.LONG32)
+    private String intervals;
+
+    // Removal is left to the database (see SequenceGram), so deleting a piece does not load its grams
+    @OneToMany(mappedBy = "searchIndex", cascade = CascadeType.PERSIST)
+    private List<SequenceGram> grams = new ArrayList<>();
+
+    protected SearchIndex() {
+    }
+
+    public SearchIndex(PieceTrack track, List<MidiNote> notes) {
+        this.track = track;
+        this.pitchClasses = PitchClassEncoding.pitchClasses(notes);
+        this.intervals = PitchClassEncoding.intervals(notes);
+        for (String gram : PitchClassEncoding.grams(pitchClasses)) {
+            grams.add(new SequenceGram(this, SequenceGram.Kind.PITCH_CLASS, gram));
+        }
+        for (String gram : PitchClassEncoding.grams(intervals)) {
+            grams.add(new SequenceGram(this, SequenceGram.Kind.INTERVAL, gram));
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public PieceTrack getTrack() {
+        return track;
+    }
+
+    public String getPitchClasses() {
+        return pitchClasses;
+    }
+
+    public String getIntervals() {
+        return intervals;
+    }
+
+    public List<SequenceGram> getGrams() {
+        return grams;
+    }
+}
@@ -0,0 +1,69 @@
+package com.stringintech.phrasewise.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+/**
+ * One distinct trigram of a {@link SearchIndex} encoding. The (kind, gram) index lets the database
+ * narrow a sequence query to the tracks containing all of its trigrams before any text is scanned.
+ */
+@Entity
+@Table(name = "sequence_gram", indexes = @Index(name = "idx_sequence_gram_lookup", columnList = "kind, gram"))
+public class SequenceGram {
+    public enum Kind {
+        PITCH_CLASS, INTERVAL
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "search_index_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private SearchIndex searchIndex;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+
+    @Column(nullable = false, length = PitchClassEncoding.GRAM_LENGTH)
+    private String gram;
+
+    protected SequenceGram() {
+    }
+
+    SequenceGram(SearchIndex searchIndex, Kind kind, String gram) {
+        this.searchIndex = searchIndex;
+        this.kind = kind;
+        this.gram = gram;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getGram() {
+        return gram;
+    }
+}
@@ -0,0 +1,51 @@
+package com.stringintech.phrasewise.repository;
+
+import com.stringintech.phrasewise.midi.MonophonicMidiSequence;
+import com.stringintech.phrasewise.model.PieceTrack;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.stereotype.Repository;
+
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+@Repository
+public class PieceRepository {
+    private static final int FETCH_SIZE = 500;
+
+    private final SessionFactory sessionFactory;
+
+    public PieceRepository(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public long countPieces() {
+        return sessionFactory.fromTransaction(session -> session
+                .createSelectionQuery("select count(p) from Piece p", Long.class)
+                .getSingleResult());
+    }
+
+    /**
+     * Streams every stored track through a stateless session, so tracks are not retained in a
+     * persistence context and memory stays bounded by the fetch size. Returns the number of tracks.
+     */
+    public long forEachTrack(BiConsumer<PieceTrack, MonophonicMidiSequence> consumer) {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            long count = 0;
+            try (Stream<PieceTrack> tracks = session
+                    .createSelectionQuery("from PieceTrack t join fetch t.piece order by t.piece.id, t.trackIndex",
+                            PieceTrack.class)
+                    .setFetchSize(FETCH_SIZE)
+                    .getResultStream()) {
+                for (PieceTrack track : (Iterable<PieceTrack>) tracks::iterator) {
+                    consumer.accept(track, track.toSequence());
+                    count++;
+                }
+            }
+            transaction.commit();
+            return count;
+        }
+    }
+}
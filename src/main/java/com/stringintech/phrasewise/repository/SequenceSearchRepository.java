@@ -0,0 +1,105 @@
+package com.stringintech.phrasewise.repository;
+
+import com.stringintech.phrasewise.core.Spelling;
+import com.stringintech.phrasewise.midi.MonophonicMidiSequence;
+import com.stringintech.phrasewise.model.PitchClassEncoding;
+import com.stringintech.phrasewise.model.SearchIndex;
+import com.stringintech.phrasewise.model.SequenceGram;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.query.SelectionQuery;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Corpus-wide sequence search executed mostly in the database. Queries of three or more notes are
+ * first narrowed to the tracks containing every trigram of the query through the indexed
+ * {@link SequenceGram} rows, and the remaining substring check on the encoded text runs on those
+ * rows only. Just the matching tracks are decoded and verified with the in-memory matcher, so JVM
+ * memory is bounded by the number of results rather than the size of the corpus.
+ */
+@Repository
+public class SequenceSearchRepository {
+    private static final int FETCH_SIZE = 100;
+
+    private final SessionFactory sessionFactory;
+
+    public record SequenceMatch(String piecePath, int trackIndex, int resolution,
+                                MonophonicMidiSequence.NoteSequenceMatch match) {
+    }
+
+    public SequenceSearchRepository(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public List<SequenceMatch> findSequence(List<Spelling> spellings, int maxResults) {
+        return search(spellings, SequenceGram.Kind.PITCH_CLASS, maxResults);
+    }
+
+    /**
+     * Finds the sequence in any key, matching on intervals between consecutive notes.
+     */
+    public List<SequenceMatch> findTransposedSequence(List<Spelling> spellings, int maxResults) {
+        return search(spellings, SequenceGram.Kind.INTERVAL, maxResults);
+    }
+
+    private List<SequenceMatch> search(List<Spelling> spellings, SequenceGram.Kind kind, int maxResults) {
+        if (spellings.isEmpty()) {
+            throw new IllegalArgumentException("No notes provided for sequence search");
+        }
+        boolean byInterval = kind == SequenceGram.Kind.INTERVAL;
+        String encoded = byInterval ?
+                PitchClassEncoding.intervalsOf(spellings) :
+                PitchClassEncoding.pitchClassesOf(spellings);
+        Set<String> grams = PitchClassEncoding.grams(encoded);
+        String column = byInterval ? "s.intervals" : "s.pitchClasses";
+
+        String hql = "select s from SearchIndex s join fetch s.track t join fetch t.piece p" +
+                " where " + column + " like :pattern";
+        if (!grams.isEmpty()) {
+            hql += " and s.id in (select g.searchIndex.id from SequenceGram g" +
+                    " where g.kind = :kind and g.gram in :grams" +
+                    " group by g.searchIndex.id having count(g) = :gramCount)";
+        }
+        hql += " order by p.path, t.trackIndex";
+
+        List<SequenceMatch> matches = new ArrayList<>();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            SelectionQuery<SearchIndex> query = session.createSelectionQuery(hql, SearchIndex.class)
+                    .setParameter("pattern", "%" + encoded + "%")
+                    .setFetchSize(FETCH_SIZE);
+            if (!grams.isEmpty()) {
+                query.setParameter("kind", kind)
+                        .setParameterList("grams", grams)
+                        .setParameter("gramCount", (long) grams.size());
+            }
+            try (Stream<SearchIndex> candidates = query.getResultStream()) {
+                for (SearchIndex candidate : (Iterable<SearchIndex>) candidates::iterator) {
+                    MonophonicMidiSequence sequence = candidate.getTrack().toSequence();
+                    MonophonicMidiSequence.NoteSequenceMatch match = byInterval ?
+                            sequence.findIntervalSequence(spellings, 0) :
+                            sequence.findNoteSequence(spellings, 0);
+                    if (match == null) {
+                        continue;
+                    }
+                    matches.add(new SequenceMatch(
+                            candidate.getTrack().getPiece().getPath(),
+                            candidate.getTrack().getTrackIndex(),
+                            sequence.getResolution(),
+                            new MonophonicMidiSequence.NoteSequenceMatch(List.copyOf(match.sequence()), match.startTick())));
+                    if (matches.size() == maxResults) {
+                        break;
+                    }
+                }
+            }
+            transaction.commit();
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,41 @@
+package com.stringintech.phrasewise.similarity;
+
+import java.util.Random;
+
+/**
+ * MinHash signatures over shingle sets: the fraction of equal positions in two signatures estimates
+ * the Jaccard similarity of the underlying sets.
+ */
+final class MinHasher {
+    private final long[] seeds;
+
+    MinHasher(int numHashes, long seed) {
+        Random random = new Random(seed);
+        this.seeds = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    int[] signature(long[] shingles) {
+        int[] signature = new int[seeds.length];
+        for (int i = 0; i < seeds.length; i++) {
+            long min = Long.MAX_VALUE;
+            for (long shingle : shingles) {
+                min = Math.min(min, NoteShingles.mix(shingle ^ seeds[i]));
+            }
+            signature[i] = (int) (min >>> 32);
+        }
+        return signature;
+    }
+
+    static double estimateSimilarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+}
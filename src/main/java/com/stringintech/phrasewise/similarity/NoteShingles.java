@@ -0,0 +1,60 @@
+package com.stringintech.phrasewise.similarity;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hashes every window of {@value #SHINGLE_NOTES} consecutive notes into a shingle built from the
+ * window's intervals and inter-onset ratios. Both are relative, so a passage and its transposition
+ * or augmentation share all of their shingles.
+ */
+final class NoteShingles {
+    static final int SHINGLE_NOTES = 5;
+
+    private NoteShingles() {
+    }
+
+    static long[] of(List<MidiNote> notes) {
+        if (notes.size() < SHINGLE_NOTES) {
+            return new long[0];
+        }
+        long[] shingles = new long[notes.size() - SHINGLE_NOTES + 1];
+        for (int i = 0; i < shingles.length; i++) {
+            long hash = 0x9E3779B97F4A7C15L;
+            for (int j = i + 1; j < i + SHINGLE_NOTES; j++) {
+                hash = mix(hash ^ (notes.get(j).pitch() - notes.get(j - 1).pitch()));
+                hash = mix(hash ^ rhythmRatio(notes, j));
+            }
+            shingles[i] = hash;
+        }
+        return Arrays.stream(shingles).distinct().toArray();
+    }
+
+    /**
+     * Inter-onset interval ratio between note {@code j} and its predecessor, quantized to half
+     * powers of two so that small timing deviations between editions do not matter.
+     */
+    private static long rhythmRatio(List<MidiNote> notes, int j) {
+        long previous = ioi(notes, j - 1);
+        long current = ioi(notes, j);
+        if (previous <= 0 || current <= 0) {
+            return Long.MIN_VALUE;
+        }
+        return Math.round(2 * Math.log((double) current / previous) / Math.log(2));
+    }
+
+    private static long ioi(List<MidiNote> notes, int i) {
+        return i + 1 < notes.size() ?
+                notes.get(i + 1).startTick() - notes.get(i).startTick() :
+                notes.get(i).duration();
+    }
+
+    // SplitMix64 finalizer
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,186 @@
+package com.stringintech.phrasewise.similarity;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Near-duplicate detection over note passages using MinHash signatures bucketed with
+ * locality-sensitive hashing. Signatures are split into bands; passages sharing any band land in the
+ * same bucket and become candidates, and only candidates are compared. With the default 32 bands of
+ * 4 rows, pairs above roughly 0.6 similarity are almost always found while dissimilar ones rarely
+ * collide.
+ * <p>
+ * Not thread-safe.
+ */
+public class PassageSimilarityIndex<K> {
+    private static final long SEED = 0x5EED_F00DL;
+
+    private final int bands;
+    private final int rowsPerBand;
+    private final MinHasher hasher;
+    private final List<Map<Long, List<K>>> buckets;
+    private final Map<K, int[]> signatures = new LinkedHashMap<>();
+
+    public record SimilarPassage<K>(K key, double similarity) {
+    }
+
+    public PassageSimilarityIndex() {
+        this(32, 4);
+    }
+
+    public PassageSimilarityIndex(int bands, int rowsPerBand) {
+        if (bands < 1 || rowsPerBand < 1) {
+            throw new IllegalArgumentException("Bands and rows per band must be positive");
+        }
+        this.bands = bands;
+        this.rowsPerBand = rowsPerBand;
+        this.hasher = new MinHasher(bands * rowsPerBand, SEED);
+        this.buckets = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Indexes a passage under the given key, replacing any passage already stored under it. Returns
+     * false if the passage is too short to be compared.
+     */
+    public boolean add(K key, List<MidiNote> notes) {
+        remove(key);
+        long[] shingles = NoteShingles.of(notes);
+        if (shingles.length == 0) {
+            return false;
+        }
+        int[] signature = hasher.signature(shingles);
+        signatures.put(key, signature);
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band).computeIfAbsent(bandHash(signature, band), h -> new ArrayList<>()).add(key);
+        }
+        return true;
+    }
+
+    public boolean remove(K key) {
+        int[] signature = signatures.remove(key);
+        if (signature == null) {
+            return false;
+        }
+        for (int band = 0; band < bands; band++) {
+            long hash = bandHash(signature, band);
+            List<K> bucket = buckets.get(band).get(hash);
+            bucket.remove(key);
+            if (bucket.isEmpty()) {
+                buckets.get(band).remove(hash);
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return signatures.size();
+    }
+
+    /**
+     * Indexed passages whose estimated similarity to the given one is at least {@code threshold},
+     * most similar first.
+     */
+    public List<SimilarPassage<K>> findSimilar(List<MidiNote> notes, double threshold) {
+        long[] shingles = NoteShingles.of(notes);
+        if (shingles.length == 0) {
+            return List.of();
+        }
+        int[] signature = hasher.signature(shingles);
+
+        List<SimilarPassage<K>> similar = new ArrayList<>();
+        for (K candidate : candidates(signature)) {
+            double similarity = MinHasher.estimateSimilarity(signature, signatures.get(candidate));
+            if (similarity >= threshold) {
+                similar.add(new SimilarPassage<>(candidate, similarity));
+            }
+        }
+        similar.sort(Comparator.comparingDouble(SimilarPassage<K>::similarity).reversed());
+        return similar;
+    }
+
+    /**
+     * Groups indexed passages whose pairwise estimated similarity reaches {@code threshold},
+     * transitively. Only passages sharing a bucket are compared, each pair at most once however many
+     * bands it shares, and not at all once both are in the same group. Groups keep insertion order
+     * and singletons are omitted, so the first key of each group can be kept and the rest dropped.
+     */
+    public List<List<K>> findDuplicateGroups(double threshold) {
+        Map<K, Integer> ordinals = new HashMap<>();
+        for (K key : signatures.keySet()) {
+            ordinals.put(key, ordinals.size());
+        }
+        Set<Long> compared = new HashSet<>();
+        Map<K, K> parents = new HashMap<>();
+        for (Map<Long, List<K>> bandBuckets : buckets) {
+            for (List<K> bucket : bandBuckets.values()) {
+                for (int i = 0; i < bucket.size(); i++) {
+                    for (int j = i + 1; j < bucket.size(); j++) {
+                        K a = bucket.get(i);
+                        K b = bucket.get(j);
+                        K rootA = find(parents, a);
+                        K rootB = find(parents, b);
+                        if (rootA.equals(rootB) || !compared.add(pairKey(ordinals.get(a), ordinals.get(b)))) {
+                            continue;
+                        }
+                        if (MinHasher.estimateSimilarity(signatures.get(a), signatures.get(b)) >= threshold) {
+                            parents.put(rootA, rootB);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<K, List<K>> groups = new LinkedHashMap<>();
+        for (K key : signatures.keySet()) {
+            if (parents.containsKey(key)) {
+                groups.computeIfAbsent(find(parents, key), root -> new ArrayList<>()).add(key);
+            }
+        }
+        return groups.values().stream().filter(group -> group.size() > 1).toList();
+    }
+
+    private Set<K> candidates(int[] signature) {
+        Set<K> candidates = new LinkedHashSet<>();
+        for (int band = 0; band < bands; band++) {
+            List<K> bucket = buckets.get(band).get(bandHash(signature, band));
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+        return candidates;
+    }
+
+    private long bandHash(int[] signature, int band) {
+        long hash = band;
+        for (int row = band * rowsPerBand; row < (band + 1) * rowsPerBand; row++) {
+            hash = NoteShingles.mix(hash ^ signature[row]);
+        }
+        return hash;
+    }
+
+    private static long pairKey(int first, int second) {
+        return (long) Math.min(first, second) << 32 | Math.max(first, second);
+    }
+
+    private static <K> K find(Map<K, K> parents, K key) {
+        K root = key;
+        K parent;
+        while ((parent = parents.get(root)) != null && !parent.equals(root)) {
+            root = parent;
+        }
+        parents.put(key, root);
+        return root;
+    }
+}
@@ -0,0 +1,94 @@
+package com.stringintech.phrasewise;
+
+import com.stringintech.phrasewise.config.HibernateConfig;
+import org.hibernate.SessionFactory;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.hibernate5.LocalSessionFactoryBuilder;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Corpus files and an in-memory database for tests that go through the loaders and repositories.
+ */
+public final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /**
+     * An H2 database with the schema of the model package, dropped again on {@link #close()}.
+     */
+    public static final class H2Database implements AutoCloseable {
+        private final EmbeddedDatabase database;
+        private final SessionFactory sessionFactory;
+
+        private H2Database(int batchSize) {
+            database = new EmbeddedDatabaseBuilder()
+                    .setType(EmbeddedDatabaseType.H2)
+                    .generateUniqueName(true)
+                    .build();
+            // Batched like the application; hibernate.properties on the classpath would otherwise set PostgreSQL
+            Properties properties = HibernateConfig.bulkWriteProperties(Integer.toString(batchSize));
+            properties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+            properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+            properties.setProperty("hibernate.generate_statistics", "true");
+            sessionFactory = new LocalSessionFactoryBuilder(database)
+                    .scanPackages("com.stringintech.phrasewise.model")
+                    .addProperties(properties)
+                    .buildSessionFactory();
+        }
+
+        public SessionFactory sessionFactory() {
+            return sessionFactory;
+        }
+
+        @Override
+        public void close() {
+            sessionFactory.close();
+            database.shutdown();
+        }
+    }
+
+    public static H2Database h2Database(int batchSize) {
+        return new H2Database(batchSize);
+    }
+
+    /**
+     * Writes a type 1 file with an empty conductor track and the pitches as consecutive eighth notes
+     * on track 1.
+     */
+    public static void writeMidi(Path file, int... pitches) throws InvalidMidiDataException, IOException {
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        sequence.createTrack();
+        Track track = sequence.createTrack();
+        long tick = 0;
+        for (int pitch : pitches) {
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 80), tick));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, pitch, 0), tick + 240));
+            tick += 240;
+        }
+        MidiSystem.write(sequence, 1, file.toFile());
+    }
+
+    /**
+     * Writes a file like {@link #writeMidi} and cuts it off inside the first track header, the way an
+     * interrupted copy or download can leave it. Java Sound then fails with an {@code EOFException}
+     * rather than an {@code InvalidMidiDataException}; a file cut within the note data still parses.
+     */
+    public static void writeTruncatedMidi(Path file, int... pitches) throws InvalidMidiDataException, IOException {
+        writeMidi(file, pitches);
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 20));
+    }
+}
@@ -0,0 +1,103 @@
+package com.stringintech.phrasewise.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static com.stringintech.phrasewise.TestFixtures.writeMidi;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRunnerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void answersEveryQueryOnceWithGroupedPieces() throws Exception {
+        writeMidi(dir.resolve("one.mid"), 62, 65, 69, 65, 62, 61, 62, 65, 69);
+        writeMidi(dir.resolve("two.mid"), 60, 62, 64);
+        StringBuilder queries = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            queries.append("{\"file\": \"").append(i % 2 == 0 ? "one" : "two")
+                    .append(".mid\", \"key\": \"D\", \"command\": \"find-sequence\", \"notes\": [\"D\", \"F\", \"A\"]}\n");
+        }
+        queries.append("\n");
+        queries.append("{\"file\": \"one.mid\", \"key\": \"D\", \"command\": \"find-phrase\", \"notes\": [\"F\", \"A\", \"--\", \"C#\", \"D\"]}\n");
+        queries.append("not json\n");
+        queries.append("{\"file\": \"one.mid\", \"key\": \"D\", \"command\": \"transpose\", \"notes\": [\"D\"]}\n");
+        Path queryFile = dir.resolve("queries.jsonl");
+        Files.writeString(queryFile, queries);
+
+        BatchRunner.BatchReport report = new BatchRunner().run(queryFile, dir.resolve("out"), 4);
+
+        assertEquals(103, report.queries());
+        assertEquals(2, report.pieces());
+        assertEquals(2, report.errors());
+
+        List<BatchResult> results = Files.readAllLines(dir.resolve("out/queries.ndjson")).stream()
+                .map(this::parse)
+                .sorted(Comparator.comparingLong(BatchResult::line))
+                .toList();
+        assertEquals(103, results.size());
+
+        BatchResult first = results.getFirst();
+        assertEquals(1, first.line());
+        assertEquals(List.of(0L, 1440L), first.matches().stream().map(BatchResult.Match::startTick).toList());
+        assertEquals("F4", first.matches().getFirst().notes().get(1).name());
+        assertTrue(results.get(1).matches().isEmpty());
+
+        BatchResult phrase = results.get(100);
+        assertEquals(102, phrase.line());
+        assertEquals(240, phrase.matches().getFirst().startTick());
+        assertEquals(1680, phrase.matches().getFirst().endTick());
+
+        assertEquals("error", results.get(101).status());
+        assertEquals("Unknown command: transpose", results.get(102).error());
+    }
+
+    @Test
+    void failingQueryDoesNotCostOtherQueriesTheirResults() throws Exception {
+        writeMidi(dir.resolve("one.mid"), 62, 65, 69);
+        StringBuilder queries = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            // A null note fails deep inside the spelling lookup rather than in validation
+            String notes = i == 3 ? "[\"D\", null]" : "[\"D\", \"F\"]";
+            queries.append("{\"file\": \"one.mid\", \"key\": \"D\", \"command\": \"find-sequence\", \"notes\": ")
+                    .append(notes).append("}\n");
+        }
+        Path queryFile = dir.resolve("queries.jsonl");
+        Files.writeString(queryFile, queries);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchRunner.BatchReport report = new BatchRunner().run(queryFile, out, 2);
+
+        assertEquals(40, report.queries());
+        assertEquals(1, report.errors());
+        List<BatchResult> results = out.toString(StandardCharsets.UTF_8).lines().map(this::parse).toList();
+        assertEquals(LongStream.rangeClosed(1, 40).boxed().toList(),
+                results.stream().map(BatchResult::line).sorted().toList());
+        assertEquals(List.of(4L), results.stream()
+                .filter(result -> "error".equals(result.status()))
+                .map(BatchResult::line)
+                .toList());
+    }
+
+    private BatchResult parse(String line) {
+        try {
+            return objectMapper.readValue(line, BatchResult.class);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
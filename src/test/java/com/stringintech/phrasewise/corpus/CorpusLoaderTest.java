@@ -0,0 +1,160 @@
+package com.stringintech.phrasewise.corpus;
+
+import com.stringintech.phrasewise.TestFixtures;
+import com.stringintech.phrasewise.midi.MidiNote;
+import com.stringintech.phrasewise.model.PieceTrack;
+import com.stringintech.phrasewise.repository.PieceRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.stringintech.phrasewise.TestFixtures.writeMidi;
+import static com.stringintech.phrasewise.TestFixtures.writeTruncatedMidi;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorpusLoaderTest {
+
+    private TestFixtures.H2Database database;
+    private SessionFactory sessionFactory;
+    private PieceRepository pieceRepository;
+    private CorpusLoader corpusLoader;
+
+    @TempDir
+    Path corpusDir;
+
+    @BeforeEach
+    void setUp() {
+        database = TestFixtures.h2Database(2);
+        sessionFactory = database.sessionFactory();
+        pieceRepository = new PieceRepository(sessionFactory);
+        corpusLoader = new CorpusLoader(sessionFactory, pieceRepository, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void loadsCorpusAndReloadsSameNotes() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            writeMidi(corpusDir.resolve("piece-" + i + ".mid"), 60 + i, 62 + i, 64 + i);
+        }
+        Files.writeString(corpusDir.resolve("notes.txt"), "not a midi file");
+
+        CorpusLoader.LoadReport loaded = corpusLoader.load(corpusDir);
+        assertEquals(5, loaded.pieces());
+        assertEquals(5, loaded.tracks());
+        assertEquals(15, loaded.notes());
+        assertEquals(5, pieceRepository.countPieces());
+
+        List<List<MidiNote>> reloadedNotes = new ArrayList<>();
+        long tracks = pieceRepository.forEachTrack((track, sequence) -> reloadedNotes.add(sequence.getNotes()));
+        assertEquals(5, tracks);
+        assertTrue(reloadedNotes.contains(List.of(
+                new MidiNote(60, 0, 240, 80, 0),
+                new MidiNote(62, 240, 240, 80, 0),
+                new MidiNote(64, 480, 240, 80, 0))));
+
+        CorpusLoader.LoadReport reloaded = corpusLoader.reload();
+        assertEquals(5, reloaded.pieces());
+        assertEquals(15, reloaded.notes());
+    }
+
+    @Test
+    void skipsUnchangedFilesAndReplacesChangedOnes() throws Exception {
+        Path file = corpusDir.resolve("piece.mid");
+        writeMidi(file, 60, 62);
+        corpusLoader.load(corpusDir);
+
+        CorpusLoader.LoadReport unchanged = corpusLoader.load(corpusDir);
+        assertEquals(0, unchanged.pieces());
+        assertEquals(1, unchanged.skipped());
+
+        writeMidi(file, 60, 62, 64, 65);
+        CorpusLoader.LoadReport changed = corpusLoader.load(corpusDir);
+        assertEquals(1, changed.pieces());
+        assertEquals(4, changed.notes());
+        assertEquals(1, pieceRepository.countPieces());
+    }
+
+    @Test
+    void replacingAndRemovingPiecesLeavesTracksToTheDatabase() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            writeMidi(corpusDir.resolve("piece-" + i + ".mid"), 60 + i, 62, 64);
+        }
+        corpusLoader.load(corpusDir);
+        for (int i = 0; i < 3; i++) {
+            writeMidi(corpusDir.resolve("piece-" + i + ".mid"), 60 + i, 62, 64, 65);
+        }
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        corpusLoader.load(corpusDir);
+        corpusLoader.apply(List.of(), List.of(CorpusLoader.pathKey(corpusDir.resolve("piece-0.mid"))));
+
+        assertEquals(0, statistics.getEntityStatistics(PieceTrack.class.getName()).getLoadCount());
+        assertEquals(2, corpusLoader.reload().tracks());
+        assertEquals(8, corpusLoader.reload().notes());
+    }
+
+    @Test
+    void looksUpAndWritesEachBatchAtOnce() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            writeMidi(corpusDir.resolve("piece-" + i + ".mid"), 60 + i, 62, 64, 65, 67, 69, 71, 72);
+        }
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        corpusLoader.load(corpusDir);
+
+        // Batch size 2: one stored-piece lookup per batch, and inserts grouped into JDBC batches
+        assertEquals(3, statistics.getQueryExecutionCount());
+        assertTrue(statistics.getPrepareStatementCount() * 2 < statistics.getEntityInsertCount(),
+                statistics.getPrepareStatementCount() + " statements for " + statistics.getEntityInsertCount() + " inserts");
+    }
+
+    @Test
+    void reloadReadsTrackRowsOnly() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            writeMidi(corpusDir.resolve("piece-" + i + ".mid"), 60 + i, 62, 64, 65, 67);
+        }
+        corpusLoader.load(corpusDir);
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        assertEquals(3, corpusLoader.reload().tracks());
+
+        // A single streamed query; the search index of each track is not fetched alongside it
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void damagedFileDoesNotStopTheLoad() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            writeMidi(corpusDir.resolve("piece-" + i + ".mid"), 60 + i, 62 + i, 64 + i);
+        }
+        writeTruncatedMidi(corpusDir.resolve("piece-2.mid"), 60, 62, 64, 65);
+
+        var report = corpusLoader.load(corpusDir);
+
+        assertEquals(3, report.pieces());
+        assertEquals(1, report.failed());
+        assertEquals(3, pieceRepository.countPieces());
+
+        // A rerun gets past the damaged file again and finds nothing else to do
+        var rerun = corpusLoader.load(corpusDir);
+        assertEquals(0, rerun.pieces());
+        assertEquals(3, rerun.skipped());
+        assertEquals(1, rerun.failed());
+    }
+}
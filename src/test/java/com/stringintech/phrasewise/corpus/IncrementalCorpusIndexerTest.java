@@ -0,0 +1,259 @@
+package com.stringintech.phrasewise.corpus;
+
+import com.stringintech.phrasewise.TestFixtures;
+import com.stringintech.phrasewise.corpus.CorpusLoader.LoadReport;
+import com.stringintech.phrasewise.corpus.CorpusLoader.ParsedPiece;
+import com.stringintech.phrasewise.repository.PieceRepository;
+import com.stringintech.phrasewise.similarity.PassageSimilarityIndex;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.stringintech.phrasewise.TestFixtures.writeMidi;
+import static com.stringintech.phrasewise.TestFixtures.writeTruncatedMidi;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalCorpusIndexerTest {
+
+    private TestFixtures.H2Database database;
+    private SessionFactory sessionFactory;
+    private PieceRepository pieceRepository;
+    private CorpusLoader corpusLoader;
+
+    @TempDir
+    Path corpusDir;
+
+    @TempDir
+    Path stateDir;
+
+    @BeforeEach
+    void setUp() {
+        database = TestFixtures.h2Database(2);
+        sessionFactory = database.sessionFactory();
+        pieceRepository = new PieceRepository(sessionFactory);
+        corpusLoader = new CorpusLoader(sessionFactory, pieceRepository, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void appliesDeltasWithoutDisturbingEarlierSnapshots() throws Exception {
+        Path first = corpusDir.resolve("first.mid");
+        Path second = corpusDir.resolve("second.mid");
+        writeMidi(first, 60, 62, 64, 65, 67);
+        writeMidi(second, 65, 67, 69);
+        var indexer = new IncrementalCorpusIndexer(List.of(corpusDir), manifestFile(), corpusLoader);
+
+        var initial = indexer.rescan();
+        assertEquals(2, initial.added());
+        var before = indexer.snapshot();
+
+        Files.delete(first);
+        writeMidi(second, 65, 67, 69, 71, 72);
+        writeMidi(corpusDir.resolve("third.mid"), 72, 74);
+        var report = indexer.rescan();
+
+        assertEquals(1, report.added());
+        assertEquals(1, report.changed());
+        assertEquals(1, report.removed());
+        String secondPath = CorpusLoader.pathKey(second);
+        byte[] secondContent = Files.readAllBytes(second);
+        assertEquals(Set.of(CorpusLoader.pathKey(first), secondPath), before.paths());
+        assertNotEquals(CorpusLoader.contentHash(secondContent), before.get(secondPath).contentHash());
+        assertEquals(CorpusLoader.contentHash(secondContent), indexer.snapshot().get(secondPath).contentHash());
+        assertEquals(List.of(1), indexer.snapshot().get(secondPath).trackIndexes());
+        assertEquals(2, indexer.snapshot().size());
+        assertEquals(before.version() + 1, indexer.snapshot().version());
+        assertEquals(2, pieceRepository.countPieces());
+        // The removed piece left the similarity index and the changed one entered it; three notes are too short
+        var secondNotes = CorpusLoader.parse(secondPath, "", secondContent).tracks().get(1).getNotes();
+        assertEquals(List.of(IncrementalCorpusIndexer.trackKey(secondPath, 1)),
+                indexer.querySimilarity((snapshot, index) -> index.findSimilar(secondNotes, 0.9).stream()
+                        .map(PassageSimilarityIndex.SimilarPassage::key)
+                        .toList()));
+    }
+
+    @Test
+    void restartOnlyRehashesFilesWhoseMetadataChanged() throws Exception {
+        Path file = corpusDir.resolve("piece.mid");
+        writeMidi(file, 60, 62, 64);
+        writeMidi(corpusDir.resolve("other.mid"), 65, 67);
+        new IncrementalCorpusIndexer(List.of(corpusDir), manifestFile(), corpusLoader).rescan();
+
+        // Same content, newer timestamp: hashed again but not parsed
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 60_000));
+        var restarted = new IncrementalCorpusIndexer(List.of(corpusDir), manifestFile(), corpusLoader);
+        assertEquals(2, restarted.snapshot().size());
+        assertEquals(List.of(1), restarted.snapshot().get(CorpusLoader.pathKey(file)).trackIndexes());
+
+        var report = restarted.rescan();
+        assertEquals(2, report.unchanged());
+        assertFalse(report.hasChanges());
+        assertEquals(2, pieceRepository.countPieces());
+    }
+
+    @Test
+    void truncatedFileIsSkippedWithoutBlockingTheRest() throws Exception {
+        Path good = corpusDir.resolve("good.mid");
+        Path truncated = corpusDir.resolve("truncated.mid");
+        writeMidi(good, 60, 62, 64);
+        writeTruncatedMidi(truncated, 60, 62, 64);
+        var indexer = new IncrementalCorpusIndexer(List.of(corpusDir), manifestFile(), corpusLoader);
+
+        var report = indexer.rescan();
+        assertEquals(1, report.added());
+        assertEquals(1, report.failed());
+        assertEquals(Set.of(CorpusLoader.pathKey(good)), indexer.snapshot().paths());
+        assertEquals(1, pieceRepository.countPieces());
+
+        // Recorded as failed, so it is not parsed again until it changes
+        var again = indexer.rescan();
+        assertEquals(0, again.failed());
+        assertEquals(2, again.unchanged());
+
+        writeMidi(truncated, 60, 62, 64);
+        assertEquals(1, indexer.update(List.of(truncated)).added());
+        assertEquals(2, pieceRepository.countPieces());
+    }
+
+    @Test
+    void firstScanIsAppliedOneBatchAtATime() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            writeMidi(corpusDir.resolve("piece-" + i + ".mid"), 60 + i, 62, 64);
+        }
+        List<Integer> appliedSizes = new ArrayList<>();
+        var recordingLoader = new CorpusLoader(sessionFactory, pieceRepository, 2) {
+            @Override
+            public LoadReport apply(Collection<ParsedPiece> upserts, Collection<String> removedPaths) {
+                appliedSizes.add(upserts.size());
+                return super.apply(upserts, removedPaths);
+            }
+        };
+        var indexer = new IncrementalCorpusIndexer(List.of(corpusDir), manifestFile(), recordingLoader);
+
+        assertEquals(5, indexer.rescan().added());
+
+        assertEquals(List.of(2, 2, 1), appliedSizes);
+        assertEquals(3, indexer.snapshot().version());
+        assertEquals(5, indexer.snapshot().size());
+        assertEquals(5, pieceRepository.countPieces());
+    }
+
+    @Test
+    void updateOnlyTouchesChangedPaths() throws Exception {
+        Path subdirectory = Files.createDirectory(corpusDir.resolve("suite"));
+        writeMidi(subdirectory.resolve("prelude.mid"), 60, 62);
+        writeMidi(subdirectory.resolve("gigue.mid"), 64, 65);
+        writeMidi(corpusDir.resolve("loose.mid"), 67, 69);
+        var indexer = new IncrementalCorpusIndexer(List.of(corpusDir), manifestFile());
+        assertEquals(3, indexer.rescan().added());
+
+        Files.delete(subdirectory.resolve("prelude.mid"));
+        Files.delete(subdirectory.resolve("gigue.mid"));
+        Files.delete(subdirectory);
+        var report = indexer.update(List.of(subdirectory));
+
+        assertEquals(2, report.removed());
+        assertEquals(0, report.unchanged());
+        assertEquals(Set.of(CorpusLoader.pathKey(corpusDir.resolve("loose.mid"))), indexer.snapshot().paths());
+    }
+
+    @Test
+    void watchPicksUpNewFiles() throws Exception {
+        var indexer = new IncrementalCorpusIndexer(List.of(corpusDir), manifestFile(), corpusLoader);
+        Thread watcher = new Thread(() -> {
+            try {
+                indexer.watch(Duration.ofMinutes(10), report -> {
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        watcher.start();
+        try {
+            while (indexer.snapshot().version() == 0 && Files.notExists(manifestFile())) {
+                Thread.sleep(50);
+            }
+            writeMidi(corpusDir.resolve("new.mid"), 60, 64, 67);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+            while (indexer.snapshot().size() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(Set.of(CorpusLoader.pathKey(corpusDir.resolve("new.mid"))), indexer.snapshot().paths());
+        } finally {
+            watcher.interrupt();
+            watcher.join();
+        }
+    }
+
+    @Test
+    void watchRetriesUpdatesThatFail() throws Exception {
+        AtomicInteger failures = new AtomicInteger(1);
+        var flakyLoader = new CorpusLoader(sessionFactory, pieceRepository, 2) {
+            @Override
+            public LoadReport apply(Collection<ParsedPiece> upserts, Collection<String> removedPaths) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("database unavailable");
+                }
+                return super.apply(upserts, removedPaths);
+            }
+        };
+        var indexer = new IncrementalCorpusIndexer(List.of(corpusDir), manifestFile(), flakyLoader);
+        Thread watcher = new Thread(() -> {
+            try {
+                indexer.watch(Duration.ofMinutes(10), report -> {
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        watcher.start();
+        try {
+            while (Files.notExists(manifestFile())) {
+                Thread.sleep(50);
+            }
+            writeMidi(corpusDir.resolve("new.mid"), 60, 64, 67);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (indexer.snapshot().size() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(watcher.isAlive());
+            // The first attempt failed, the retry went through
+            assertEquals(-1, failures.get());
+            assertEquals(Set.of(CorpusLoader.pathKey(corpusDir.resolve("new.mid"))), indexer.snapshot().paths());
+            assertEquals(1, pieceRepository.countPieces());
+        } finally {
+            watcher.interrupt();
+            watcher.join();
+        }
+    }
+
+    private Path manifestFile() {
+        return stateDir.resolve("manifest.tsv");
+    }
+}
@@ -0,0 +1,58 @@
+package com.stringintech.phrasewise.exercise;
+
+import com.stringintech.phrasewise.core.Key;
+import com.stringintech.phrasewise.midi.MidiNote;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.stringintech.phrasewise.core.NoteName.D;
+import static com.stringintech.phrasewise.core.Spelling.natural;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExerciseGeneratorTest {
+
+    // D3 F3 A3
+    private static final List<MidiNote> PHRASE = List.of(
+            new MidiNote(50, 0, 240, 80, 0),
+            new MidiNote(53, 240, 240, 80, 0),
+            new MidiNote(57, 480, 480, 80, 0)
+    );
+
+    @Test
+    void coversAllTwelveKeysWithinRange() {
+        var exercises = new ExerciseGenerator(InstrumentRange.CELLO)
+                .generate(List.of(PHRASE), new Key(natural(D), Key.Mode.MINOR));
+
+        assertEquals(12, exercises.stream().map(exercise -> exercise.key().getTonic()).distinct().count());
+        assertTrue(exercises.stream().allMatch(exercise -> InstrumentRange.CELLO.fits(exercise.notes(), 0)));
+        assertEquals(List.of("A", "Bb", "B", "C", "C#", "D", "Eb", "E", "F", "F#", "G", "G#"),
+                exercises.stream().map(exercise -> exercise.key().getTonic().getSymbol()).distinct().toList());
+    }
+
+    @Test
+    void keepsRhythmAndShiftsPitchesWithKey() {
+        var exercises = new ExerciseGenerator(new InstrumentRange(45, 62))
+                .generate(List.of(PHRASE), new Key(natural(D), Key.Mode.MINOR));
+
+        var original = exercises.stream().filter(exercise -> exercise.title().equals("Phrase 1, D minor")).findFirst().orElseThrow();
+        assertEquals(PHRASE, original.notes());
+
+        var gMinor = exercises.stream().filter(exercise -> exercise.title().equals("Phrase 1, G minor")).findFirst().orElseThrow();
+        assertEquals(List.of(55, 58, 62), gMinor.notes().stream().map(MidiNote::pitch).toList());
+        assertEquals(List.of(0L, 240L, 480L), gMinor.notes().stream().map(MidiNote::startTick).toList());
+    }
+
+    @Test
+    void addsOctaveShiftsThatFitTheRange() {
+        var exercises = new ExerciseGenerator(InstrumentRange.CELLO)
+                .generate(List.of(PHRASE, PHRASE), new Key(natural(D), Key.Mode.MINOR));
+
+        assertEquals(List.of("Phrase 1, D minor (-1 octave)", "Phrase 1, D minor", "Phrase 1, D minor (+1 octave)",
+                        "Phrase 1, D minor (+2 octaves)"),
+                exercises.stream().map(ExerciseGenerator.Exercise::title)
+                        .filter(title -> title.startsWith("Phrase 1, D minor")).toList());
+        assertEquals(exercises.size() / 2, exercises.stream().filter(exercise -> exercise.phraseIndex() == 1).count());
+    }
+}
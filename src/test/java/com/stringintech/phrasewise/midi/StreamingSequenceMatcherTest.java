@@ -0,0 +1,72 @@
+package com.stringintech.phrasewise.midi;
+
+import com.stringintech.phrasewise.core.Spelling;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class StreamingSequenceMatcherTest {
+
+    private record Match(int sequenceIndex, long startTick, long lastNoteTick) {
+    }
+
+    @Test
+    void reportsOverlappingMatchesAsNotesArrive() throws InvalidMidiDataException {
+        // D E D E D F, eighth notes
+        Track track = newTrack(62, 64, 62, 64, 62, 65);
+        List<Match> matches = new ArrayList<>();
+        var matcher = new StreamingSequenceMatcher(List.of(
+                Spelling.listFromSymbols(List.of("D", "E", "D")),
+                Spelling.listFromSymbols(List.of("D", "F"))
+        ), (index, start, last) -> matches.add(new Match(index, start, last)));
+
+        replay(track, matcher);
+
+        assertEquals(List.of(
+                new Match(0, 0, 480),
+                new Match(0, 480, 960),
+                new Match(1, 960, 1200)
+        ), matches);
+        assertFalse(matcher.isNoteSounding());
+    }
+
+    @Test
+    void matchesEnharmonicSpellings() throws InvalidMidiDataException {
+        Track track = newTrack(70, 72);
+        List<Match> matches = new ArrayList<>();
+        var matcher = new StreamingSequenceMatcher(
+                List.of(Spelling.listFromSymbols(List.of("A#", "C"))),
+                (index, start, last) -> matches.add(new Match(index, start, last)));
+
+        replay(track, matcher);
+
+        assertEquals(List.of(new Match(0, 0, 240)), matches);
+    }
+
+    private static void replay(Track track, StreamingSequenceMatcher matcher) {
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            matcher.send(event.getMessage(), event.getTick());
+        }
+    }
+
+    private static Track newTrack(int... pitches) throws InvalidMidiDataException {
+        Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+        long tick = 0;
+        for (int pitch : pitches) {
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 80), tick));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, pitch, 0), tick + 240));
+            tick += 240;
+        }
+        return track;
+    }
+}
@@ -0,0 +1,127 @@
+package com.stringintech.phrasewise.midi;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VoiceReductionTest {
+
+    private static Track polyphonicTrack() throws InvalidMidiDataException {
+        Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+        // C major chord, then D overlapping E legato, then A under a long high C
+        addNote(track, 48, 0, 480);
+        addNote(track, 52, 0, 480);
+        addNote(track, 55, 0, 480);
+        addNote(track, 62, 480, 730);
+        addNote(track, 64, 720, 960);
+        addNote(track, 57, 960, 1200);
+        addNote(track, 72, 960, 1440);
+        return track;
+    }
+
+    @Test
+    void strictConstructorRejectsOverlaps() {
+        assertThrows(IllegalStateException.class, () -> new MonophonicMidiSequence(polyphonicTrack(), 480));
+    }
+
+    @Test
+    void skylineKeepsTopVoice() throws InvalidMidiDataException {
+        assertEquals(List.of("55@0+480", "62@480+240", "64@720+240", "72@960+480"),
+                reduce(VoiceReduction.SKYLINE));
+    }
+
+    @Test
+    void bassKeepsLowestVoice() throws InvalidMidiDataException {
+        // Drops back to the held E and high C once the lower notes are released
+        assertEquals(List.of("48@0+480", "62@480+250", "64@730+230", "57@960+240", "72@1200+240"),
+                reduce(VoiceReduction.BASS));
+    }
+
+    @Test
+    void skylineResumesHeldNoteAfterHigherNoteEnds() throws InvalidMidiDataException {
+        Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+        addNote(track, 60, 0, 960);
+        addNote(track, 64, 240, 480);
+        var notes = new MonophonicMidiSequence(track, 480, VoiceReduction.SKYLINE).getNotes();
+        assertEquals(List.of("60@0+240", "64@240+240", "60@480+480"), describe(notes));
+    }
+
+    @Test
+    void skylineResumesAfterInnerNotesWereReleased() throws InvalidMidiDataException {
+        Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+        addNote(track, 60, 0, 1440);
+        addNote(track, 62, 0, 480);
+        addNote(track, 64, 0, 960);
+        addNote(track, 67, 240, 720);
+        var notes = new MonophonicMidiSequence(track, 480, VoiceReduction.SKYLINE).getNotes();
+        assertEquals(List.of("64@0+240", "67@240+480", "64@720+240", "60@960+480"), describe(notes));
+    }
+
+    @Test
+    void restrikeBeforeReleaseKeepsBothNotes() throws InvalidMidiDataException {
+        // D struck again at 480 before the first D's note-off at the same tick
+        Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+        addEvent(track, ShortMessage.NOTE_ON, 62, 0);
+        addEvent(track, ShortMessage.NOTE_ON, 62, 480);
+        addEvent(track, ShortMessage.NOTE_OFF, 62, 480);
+        addEvent(track, ShortMessage.NOTE_OFF, 62, 960);
+        for (VoiceReduction reduction : VoiceReduction.values()) {
+            assertEquals(List.of("62@0+480", "62@480+480"),
+                    describe(new MonophonicMidiSequence(track, 480, reduction).getNotes()), reduction.name());
+        }
+    }
+
+    @Test
+    void overlappingRestrikeIsNotCutByEarlierRelease() throws InvalidMidiDataException {
+        Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+        addEvent(track, ShortMessage.NOTE_ON, 62, 0);
+        addEvent(track, ShortMessage.NOTE_ON, 62, 470);
+        addEvent(track, ShortMessage.NOTE_OFF, 62, 480);
+        addEvent(track, ShortMessage.NOTE_OFF, 62, 960);
+        for (VoiceReduction reduction : VoiceReduction.values()) {
+            assertEquals(List.of("62@0+470", "62@470+490"),
+                    describe(new MonophonicMidiSequence(track, 480, reduction).getNotes()), reduction.name());
+        }
+    }
+
+    @Test
+    void trimOverlapsCutsLegatoNotes() throws InvalidMidiDataException {
+        Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+        addNote(track, 62, 0, 250);
+        addNote(track, 60, 240, 480);
+        var notes = new MonophonicMidiSequence(track, 480, VoiceReduction.TRIM_OVERLAPS).getNotes();
+        assertEquals(List.of("62@0+240", "60@240+240"), describe(notes));
+    }
+
+    @Test
+    void polyphonicSequenceKeepsEveryNote() throws InvalidMidiDataException {
+        assertEquals(7, new PolyphonicMidiSequence(polyphonicTrack(), 480).getNotes().size());
+    }
+
+    private static List<String> reduce(VoiceReduction reduction) throws InvalidMidiDataException {
+        return describe(new MonophonicMidiSequence(polyphonicTrack(), 480, reduction).getNotes());
+    }
+
+    private static List<String> describe(List<MidiNote> notes) {
+        return notes.stream()
+                .map(note -> note.pitch() + "@" + note.startTick() + "+" + note.duration())
+                .toList();
+    }
+
+    private static void addNote(Track track, int pitch, long on, long off) throws InvalidMidiDataException {
+        addEvent(track, ShortMessage.NOTE_ON, pitch, on);
+        addEvent(track, ShortMessage.NOTE_OFF, pitch, off);
+    }
+
+    private static void addEvent(Track track, int command, int pitch, long tick) throws InvalidMidiDataException {
+        track.add(new MidiEvent(new ShortMessage(command, 0, pitch, command == ShortMessage.NOTE_ON ? 80 : 0), tick));
+    }
+}
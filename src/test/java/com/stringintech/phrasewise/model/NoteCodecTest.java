@@ -0,0 +1,52 @@
+package com.stringintech.phrasewise.model;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NoteCodecTest {
+
+    @Test
+    void roundTripsNotes() {
+        List<MidiNote> notes = List.of(
+                new MidiNote(50, 0, 240, 80, 0),
+                new MidiNote(127, 240, 1920, 127, 15),
+                new MidiNote(0, 5_000_000_000L, 1, 1, 3)
+        );
+        assertEquals(notes, NoteCodec.decode(NoteCodec.encode(notes)));
+    }
+
+    @Test
+    void storesTypicalNotesCompactly() {
+        List<MidiNote> notes = List.of(
+                new MidiNote(62, 0, 120, 80, 0),
+                new MidiNote(64, 120, 120, 80, 0)
+        );
+        assertTrue(NoteCodec.encode(notes).length <= 2 + 2 * 6);
+    }
+
+    @Test
+    void rejectsUnsortedNotes() {
+        List<MidiNote> notes = List.of(
+                new MidiNote(62, 240, 120, 80, 0),
+                new MidiNote(64, 0, 120, 80, 0)
+        );
+        assertThrows(IllegalArgumentException.class, () -> NoteCodec.encode(notes));
+    }
+
+    @Test
+    void encodesPitchClassesAndIntervals() {
+        List<MidiNote> notes = List.of(
+                new MidiNote(62, 0, 120, 80, 0),
+                new MidiNote(71, 120, 120, 80, 0),
+                new MidiNote(60, 240, 120, 80, 0)
+        );
+        assertEquals("2b0", PitchClassEncoding.pitchClasses(notes));
+        assertEquals("91", PitchClassEncoding.intervals(notes));
+    }
+}
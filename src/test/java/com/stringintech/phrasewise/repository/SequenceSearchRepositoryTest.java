@@ -0,0 +1,84 @@
+package com.stringintech.phrasewise.repository;
+
+import com.stringintech.phrasewise.TestFixtures;
+import com.stringintech.phrasewise.core.Spelling;
+import com.stringintech.phrasewise.corpus.CorpusLoader;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.stringintech.phrasewise.TestFixtures.writeMidi;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SequenceSearchRepositoryTest {
+
+    private TestFixtures.H2Database database;
+    private SessionFactory sessionFactory;
+    private SequenceSearchRepository searchRepository;
+
+    @TempDir
+    Path corpusDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        database = TestFixtures.h2Database(50);
+        sessionFactory = database.sessionFactory();
+        searchRepository = new SequenceSearchRepository(sessionFactory);
+
+        // D minor and E minor versions of the same figure, plus an unrelated scale
+        writeMidi(corpusDir.resolve("d-minor.mid"), 62, 65, 69, 65, 62, 61, 62);
+        writeMidi(corpusDir.resolve("e-minor.mid"), 64, 67, 71, 67, 64, 63, 64);
+        writeMidi(corpusDir.resolve("scale.mid"), 60, 62, 64, 65, 67, 69, 71, 72);
+        new CorpusLoader(sessionFactory, new PieceRepository(sessionFactory), 50).load(corpusDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void findsPitchClassSequenceInMatchingPieceOnly() {
+        var matches = searchRepository.findSequence(spellings("F", "A", "F", "D"), 10);
+
+        assertEquals(1, matches.size());
+        assertTrue(matches.getFirst().piecePath().endsWith("d-minor.mid"));
+        assertEquals(240, matches.getFirst().match().startTick());
+        assertEquals(List.of(65, 69, 65, 62), matches.getFirst().match().sequence().stream()
+                .map(note -> note.pitch()).toList());
+    }
+
+    @Test
+    void findsTransposedSequenceInEveryKey() {
+        var matches = searchRepository.findTransposedSequence(spellings("A", "C", "E", "C", "A"), 10);
+
+        assertEquals(List.of("d-minor.mid", "e-minor.mid"), matches.stream()
+                .map(match -> Path.of(match.piecePath()).getFileName().toString())
+                .toList());
+    }
+
+    @Test
+    void handlesQueriesShorterThanATrigram() {
+        assertEquals(2, searchRepository.findSequence(spellings("E"), 10).size());
+        assertEquals(1, searchRepository.findSequence(spellings("E"), 1).size());
+
+        var matches = searchRepository.findSequence(spellings("D", "E"), 10);
+        assertEquals(1, matches.size());
+        assertTrue(matches.getFirst().piecePath().endsWith("scale.mid"));
+    }
+
+    @Test
+    void returnsNothingForAbsentSequence() {
+        assertTrue(searchRepository.findSequence(spellings("C", "C#", "C"), 10).isEmpty());
+    }
+
+    private static List<Spelling> spellings(String... symbols) {
+        return Spelling.listFromSymbols(List.of(symbols));
+    }
+}
@@ -0,0 +1,72 @@
+package com.stringintech.phrasewise.similarity;
+
+import com.stringintech.phrasewise.midi.MidiNote;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PassageSimilarityIndexTest {
+
+    private static final int[] PRELUDE = {62, 65, 69, 65, 62, 61, 62, 64, 65, 67, 69, 70, 69, 67, 65, 64, 62, 60, 58, 57};
+    private static final int[] ARPEGGIO = {60, 67, 64, 72, 55, 60, 64, 67, 72, 76, 79, 76, 72, 67, 64, 60, 48, 55, 52, 60};
+
+    private PassageSimilarityIndex<String> index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PassageSimilarityIndex<>();
+        index.add("prelude", line(0, 240, PRELUDE));
+        index.add("prelude-transposed-augmented", line(2, 480, PRELUDE));
+        index.add("arpeggio", line(0, 240, ARPEGGIO));
+    }
+
+    @Test
+    void findsTranspositionsAndTempoChangesAsIdentical() {
+        var similar = index.findSimilar(line(-3, 120, PRELUDE), 0.8);
+
+        assertEquals(List.of("prelude", "prelude-transposed-augmented"),
+                similar.stream().map(PassageSimilarityIndex.SimilarPassage::key).sorted().toList());
+        assertTrue(similar.stream().allMatch(passage -> passage.similarity() == 1.0));
+    }
+
+    @Test
+    void groupsDuplicatesAndLeavesDistinctPassagesOut() {
+        int[] edition = PRELUDE.clone();
+        edition[10] = 71;
+        index.add("prelude-edition", line(0, 240, edition));
+
+        assertEquals(List.of(List.of("prelude", "prelude-transposed-augmented", "prelude-edition")),
+                index.findDuplicateGroups(0.4));
+    }
+
+    @Test
+    void removedPassagesAreNoLongerFound() {
+        assertTrue(index.remove("prelude"));
+        assertFalse(index.remove("prelude"));
+
+        assertEquals(2, index.size());
+        assertEquals(List.of("prelude-transposed-augmented"), index.findSimilar(line(0, 240, PRELUDE), 0.8)
+                .stream().map(PassageSimilarityIndex.SimilarPassage::key).toList());
+        assertTrue(index.findDuplicateGroups(0.8).isEmpty());
+    }
+
+    @Test
+    void ignoresPassagesTooShortToShingle() {
+        assertFalse(index.add("motif", line(0, 240, 62, 65, 69)));
+        assertTrue(index.findSimilar(line(0, 240, 62, 65, 69), 0.1).isEmpty());
+    }
+
+    private static List<MidiNote> line(int transposition, int ticks, int... pitches) {
+        List<MidiNote> notes = new ArrayList<>();
+        for (int i = 0; i < pitches.length; i++) {
+            notes.add(new MidiNote(pitches[i] + transposition, (long) i * ticks, ticks, 80, 0));
+        }
+        return notes;
+    }
+}
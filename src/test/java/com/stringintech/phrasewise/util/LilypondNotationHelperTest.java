@@ -53,4 +53,15 @@ class LilypondNotationHelperTest {
         assertEquals("c'", LilypondNotationHelper.midiPitchToLilyPond(60, key));
         assertEquals("c''", LilypondNotationHelper.midiPitchToLilyPond(72, key));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Transposed keys should keep conventional key signatures")
+    void transposedKeyNotation() {
+        var dMinor = new Key(natural(D), Key.Mode.MINOR);
+        assertEquals("d \\minor", LilypondNotationHelper.keyToLilyPond(dMinor));
+        assertEquals("ees \\minor", LilypondNotationHelper.keyToLilyPond(dMinor.transpose(1)));
+        assertEquals("gis \\minor", LilypondNotationHelper.keyToLilyPond(dMinor.transpose(-6)));
+        assertEquals("aes \\major", LilypondNotationHelper.keyToLilyPond(new Key(natural(C), Key.Mode.MAJOR).transpose(8)));
+        assertEquals("bes'", LilypondNotationHelper.midiPitchToLilyPond(MIDI_AS4, dMinor.transpose(5)));
+    }
+}